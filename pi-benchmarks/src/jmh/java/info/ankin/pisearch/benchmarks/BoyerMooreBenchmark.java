@@ -0,0 +1,52 @@
+package info.ankin.pisearch.benchmarks;
+
+import info.ankin.pisearch.indexing.BoyerMoore;
+import info.ankin.pisearch.indexing.DigitSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BoyerMooreBenchmark {
+    @Param({"1", "4", "8", "12", "20"})
+    public int patternLength;
+
+    private String text;
+    private char[] textChars;
+    private DigitSource mapped;
+    private BoyerMoore stringSearch;
+    private BoyerMoore charSearch;
+
+    @Setup
+    public void setUp() throws IOException {
+        text = Digits.read();
+        textChars = text.toCharArray();
+        mapped = DigitSource.open(Digits.path());
+        String pattern = Digits.patternOfLength(text, patternLength);
+        stringSearch = new BoyerMoore(pattern);
+        charSearch = new BoyerMoore(pattern.toCharArray(), 256);
+    }
+
+    @Benchmark
+    public int searchString() {
+        return stringSearch.search(text);
+    }
+
+    @Benchmark
+    public int searchChars() {
+        return charSearch.search(textChars);
+    }
+
+    @Benchmark
+    public long searchMapped() {
+        return stringSearch.search(mapped);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mapped.close();
+    }
+}
@@ -0,0 +1,50 @@
+package info.ankin.pisearch.benchmarks;
+
+import info.ankin.pisearch.indexing.DigitSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * the bundled digits of pi, which all benchmarks run against.
+ * the location can be overridden with {@code -Dpi.digits=...}
+ */
+final class Digits {
+    private Digits() {
+    }
+
+    static Path path() {
+        return Paths.get(System.getProperty("pi.digits", "../digits/pi-digits.txt"));
+    }
+
+    static String read() {
+        try {
+            return Files.readString(path(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * the digits memory-mapped rather than read into a {@link String}, for files larger than one can hold
+     */
+    static DigitSource open() {
+        try {
+            return DigitSource.open(path());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * a pattern which does occur in the text, though not near the start
+     */
+    static String patternOfLength(String text, int length) {
+        int offset = text.length() * 3 / 4;
+        return text.substring(offset, offset + length);
+    }
+}
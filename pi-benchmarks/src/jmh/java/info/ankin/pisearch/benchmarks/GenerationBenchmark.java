@@ -0,0 +1,40 @@
+package info.ankin.pisearch.benchmarks;
+
+import info.ankin.pisearch.generation.BinarySplittingPiGenerator;
+import info.ankin.pisearch.generation.PiGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GenerationBenchmark {
+    @Param({"50", "200", "500"})
+    public int precision;
+
+    @Param({"true", "false"})
+    public boolean useCache;
+
+    /**
+     * enough terms of the series for the precision
+     */
+    private int iterations;
+
+    @Setup
+    public void setUp() {
+        iterations = (int) (precision / BinarySplittingPiGenerator.DIGITS_PER_TERM) + 1;
+    }
+
+    @Benchmark
+    public BigDecimal piGenerator() {
+        // a new generator each time, so the cache does not carry over between invocations
+        return new PiGenerator(precision).setUseCache(useCache).calculate(iterations);
+    }
+
+    @Benchmark
+    public BigDecimal binarySplitting() {
+        return new BinarySplittingPiGenerator().calculate(precision);
+    }
+}
@@ -0,0 +1,52 @@
+package info.ankin.pisearch.benchmarks;
+
+import info.ankin.pisearch.indexing.DigitSource;
+import info.ankin.pisearch.indexing.HashSearch;
+import info.ankin.pisearch.indexing.WindowIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HashSearchBenchmark {
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9", "10",
+            "11", "12", "13", "14", "15", "16", "17", "18", "19", "20"})
+    public int patternLength;
+
+    private String text;
+    private String pattern;
+    private HashSearch.Searcher searcher;
+
+    @Setup
+    public void setUp() {
+        text = Digits.read();
+        pattern = Digits.patternOfLength(text, patternLength);
+        searcher = new HashSearch.Searcher(text).initHashesForLength(patternLength);
+    }
+
+    @Benchmark
+    public HashSearch.Searcher build() {
+        return new HashSearch.Searcher(text).initHashesForLength(patternLength);
+    }
+
+    @Benchmark
+    public WindowIndex buildSequential() {
+        return WindowIndex.build(DigitSource.of(text), patternLength, false);
+    }
+
+    @Benchmark
+    public int query() {
+        return searcher.search(pattern);
+    }
+
+    /**
+     * the same query from several threads against one searcher, to see that throughput scales with them
+     */
+    @Benchmark
+    @Threads(4)
+    public int queryConcurrent() {
+        return searcher.search(pattern);
+    }
+}
@@ -0,0 +1,50 @@
+package info.ankin.pisearch.benchmarks;
+
+import info.ankin.pisearch.indexing.DigitSource;
+import info.ankin.pisearch.indexing.MultiPatternSearch;
+import info.ankin.pisearch.indexing.QGramSearch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a batch of 8-digit patterns, mostly missing from the text like arbitrary dates or phone numbers would be:
+ * one Aho-Corasick pass for all of them against one q-gram search per pattern
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MultiPatternSearchBenchmark {
+    @Param({"1", "10", "100", "1000"})
+    public int patternCount;
+
+    private DigitSource source;
+    private List<QGramSearch> qGramSearches;
+    private MultiPatternSearch multiPatternSearch;
+
+    @Setup
+    public void setUp() {
+        source = DigitSource.of(Digits.read());
+        Random random = new Random(314);
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < patternCount; i++) patterns.add(String.format("%08d", random.nextInt(100_000_000)));
+        qGramSearches = new ArrayList<>();
+        for (String pattern : patterns) qGramSearches.add(new QGramSearch(pattern));
+        multiPatternSearch = new MultiPatternSearch(patterns);
+    }
+
+    @Benchmark
+    public long[] ahoCorasick() {
+        return multiPatternSearch.first(source);
+    }
+
+    @Benchmark
+    public long[] qGramEach() {
+        long[] first = new long[qGramSearches.size()];
+        for (int i = 0; i < first.length; i++) first[i] = qGramSearches.get(i).search(source);
+        return first;
+    }
+}
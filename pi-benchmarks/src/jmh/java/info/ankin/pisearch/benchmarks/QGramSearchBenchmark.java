@@ -0,0 +1,55 @@
+package info.ankin.pisearch.benchmarks;
+
+import info.ankin.pisearch.indexing.BoyerMoore;
+import info.ankin.pisearch.indexing.QGramSearch;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * q-gram search against the existing {@link BoyerMoore} searches, for patterns which do not occur,
+ * so that every search scans the whole text.
+ * point {@code -Dpi.digits} at a longer prefix of pi for more representative numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QGramSearchBenchmark {
+    @Param({"4", "8", "12", "20"})
+    public int patternLength;
+
+    private String text;
+    private byte[] textBytes;
+    private char[] textChars;
+    private BoyerMoore boyerMoore;
+    private BoyerMoore boyerMooreChars;
+    private QGramSearch qGramSearch;
+
+    @Setup
+    public void setUp() {
+        text = Digits.read();
+        textBytes = text.getBytes(StandardCharsets.US_ASCII);
+        textChars = text.toCharArray();
+        // a letter never occurs, but only after the window has been compared all the way back to it
+        String pattern = "x" + Digits.patternOfLength(text, patternLength - 1);
+        boyerMoore = new BoyerMoore(pattern);
+        boyerMooreChars = new BoyerMoore(pattern.toCharArray(), 256);
+        qGramSearch = new QGramSearch(pattern);
+    }
+
+    @Benchmark
+    public int boyerMooreString() {
+        return boyerMoore.search(text);
+    }
+
+    @Benchmark
+    public int boyerMooreChars() {
+        return boyerMooreChars.search(textChars);
+    }
+
+    @Benchmark
+    public int qGram() {
+        return qGramSearch.search(textBytes);
+    }
+}
@@ -0,0 +1,94 @@
+package info.ankin.pisearch.benchmarks;
+
+import info.ankin.pisearch.indexing.BoyerMoore;
+import info.ankin.pisearch.indexing.DigitSource;
+import info.ankin.pisearch.indexing.HashSearch;
+import info.ankin.pisearch.indexing.QGramSearch;
+import info.ankin.pisearch.indexing.ShardCoordinator;
+import info.ankin.pisearch.indexing.VectorSearch;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the vectorized scan against its fallback on {@code long}s, the skipping searches, and a lookup in the window index,
+ * over the digits memory-mapped, so that {@code -Dpi.digits} can point at a file of several GB.
+ * <p>
+ * The pattern has a digit of a real one replaced by a letter in the middle, so it never occurs and every scan
+ * reads the whole text. The fallback compares only the first and last characters, which still match about one
+ * position in a hundred; the vector kernel compares the first two and the last two, which match about one in
+ * ten thousand, and never for a length of 4, where the letter is one of them.
+ * The index is built during setup; above {@link Integer#MAX_VALUE} digits it is split into
+ * {@link ShardCoordinator#local(DigitSource, int, int...) local shards}, and it takes about eight bytes of heap per digit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VectorSearchBenchmark {
+    private static final long SHARD_SIZE = 1L << 30;
+
+    @Param({"4", "8", "12", "20"})
+    public int patternLength;
+
+    private DigitSource source;
+    private String pattern;
+    private BoyerMoore boyerMoore;
+    private QGramSearch qGramSearch;
+    private VectorSearch vectorSearch;
+    private VectorSearch scalarSearch;
+    private HashSearch.Searcher searcher;
+    private ShardCoordinator coordinator;
+
+    @Setup
+    public void setUp() {
+        source = Digits.open();
+        long offset = source.length() * 3 / 4;
+        String digits = source.substring(offset, offset + patternLength);
+        pattern = digits.substring(0, patternLength / 2) + "x" + digits.substring(patternLength / 2 + 1);
+
+        boyerMoore = new BoyerMoore(pattern);
+        qGramSearch = new QGramSearch(pattern);
+        vectorSearch = new VectorSearch(pattern);
+        scalarSearch = VectorSearch.scalar(pattern);
+        if (!VectorSearch.isVectorized()) System.err.println("the Vector API is not available, vector() runs on longs too");
+
+        if (source.length() <= Integer.MAX_VALUE) {
+            searcher = new HashSearch.Searcher(source).initHashesForLength(patternLength);
+        } else {
+            int shards = (int) ((source.length() + SHARD_SIZE - 1) / SHARD_SIZE);
+            coordinator = new ShardCoordinator(ShardCoordinator.local(source, shards, patternLength), TimeUnit.HOURS.toMillis(1));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (coordinator != null) coordinator.close();
+        source.close();
+    }
+
+    @Benchmark
+    public long boyerMoore() {
+        return boyerMoore.search(source);
+    }
+
+    @Benchmark
+    public long qGram() {
+        return qGramSearch.search(source);
+    }
+
+    @Benchmark
+    public long vector() {
+        return vectorSearch.search(source);
+    }
+
+    @Benchmark
+    public long scalar() {
+        return scalarSearch.search(source);
+    }
+
+    @Benchmark
+    public long hashSearch() {
+        return searcher != null ? searcher.search(pattern) : coordinator.first(pattern).getValue();
+    }
+}
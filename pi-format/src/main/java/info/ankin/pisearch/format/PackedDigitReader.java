@@ -0,0 +1,117 @@
+package info.ankin.pisearch.format;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access to the digits of a packed digit file, see {@link PackedDigits}.
+ * <p>
+ * The file is memory-mapped rather than read, as several segments
+ * (a single mapping cannot exceed 2GB), so the digits never have to fit on the heap.
+ * Instances are safe to share between threads, as nothing is mutated after opening.
+ */
+public class PackedDigitReader implements Closeable {
+    /**
+     * bytes per mapped segment
+     */
+    static final int SEGMENT_SHIFT = 30;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long count;
+
+    public PackedDigitReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = PackedDigits.readHeader(channel);
+        if (header.hasRemaining() || header.getInt(0) != PackedDigits.MAGIC)
+            throw new IOException("not a packed digit file");
+        if (header.get(4) != PackedDigits.VERSION)
+            throw new IOException("unsupported packed digit file version: " + header.get(4));
+        this.count = header.getLong(PackedDigits.COUNT_OFFSET);
+        if (channel.size() < PackedDigits.fileSize(count))
+            throw new IOException("packed digit file is truncated, expected " + count + " digits");
+
+        long bytes = (count + 1) / 2;
+        segments = new MappedByteBuffer[(int) ((bytes + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            long offset = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    PackedDigits.HEADER_SIZE + offset, Math.min(SEGMENT_SIZE, bytes - offset));
+        }
+    }
+
+    public static PackedDigitReader open(Path path) throws IOException {
+        return open(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * @param channel closed if it is not a readable packed digit file, rather than left to the caller
+     */
+    static PackedDigitReader open(FileChannel channel) throws IOException {
+        try {
+            return new PackedDigitReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of digits in the file
+     */
+    public long length() {
+        return count;
+    }
+
+    /**
+     * @param index digit offset, from zero
+     * @return the value of the digit, {@code 0} to {@code 9}
+     */
+    public int digitAt(long index) {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("digit " + index + " of " + count);
+        int packed = byteAt(index >>> 1);
+        return (index & 1) == 0 ? packed >>> 4 : packed & 0xF;
+    }
+
+    /**
+     * unpack a range of digits as ASCII characters
+     *
+     * @param index     offset of the first digit
+     * @param dst       where to put the digits
+     * @param dstOffset offset in {@code dst}
+     * @param length    number of digits
+     */
+    public void readAscii(long index, byte[] dst, int dstOffset, int length) {
+        if (index < 0 || length < 0 || index + length > count)
+            throw new IndexOutOfBoundsException("digits [" + index + ", " + (index + length) + ") of " + count);
+        int i = 0;
+        if ((index & 1) == 1 && length > 0) {
+            dst[dstOffset] = (byte) ('0' + (byteAt(index >>> 1) & 0xF));
+            i = 1;
+        }
+        // whole bytes, two digits each
+        long bytePosition = (index + i) >>> 1;
+        for (; i + 1 < length; i += 2, bytePosition++) {
+            int packed = byteAt(bytePosition);
+            dst[dstOffset + i] = (byte) ('0' + (packed >>> 4));
+            dst[dstOffset + i + 1] = (byte) ('0' + (packed & 0xF));
+        }
+        if (i < length) dst[dstOffset + i] = (byte) ('0' + (byteAt(bytePosition) >>> 4));
+    }
+
+    private int byteAt(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK)) & 0xFF;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
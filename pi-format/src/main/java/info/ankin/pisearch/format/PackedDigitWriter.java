@@ -0,0 +1,103 @@
+package info.ankin.pisearch.format;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends ASCII digits to a packed digit file, see {@link PackedDigits}.
+ * The digit count in the header is only filled in when the writer is closed.
+ */
+public class PackedDigitWriter implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long count;
+    /**
+     * the first digit of a pair, waiting for the second one; or -1
+     */
+    private int pending = -1;
+
+    public PackedDigitWriter(FileChannel channel) throws IOException {
+        this(channel, 1 << 16);
+    }
+
+    public PackedDigitWriter(FileChannel channel, int bufferSize) throws IOException {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        channel.truncate(0);
+        writeFully(PackedDigits.header(0), 0);
+        channel.position(PackedDigits.HEADER_SIZE);
+    }
+
+    /**
+     * create (or truncate) the file at {@code path}
+     */
+    public static PackedDigitWriter create(Path path) throws IOException {
+        return new PackedDigitWriter(FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * @return number of digits written so far
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * pack the remaining ASCII digits of {@code ascii}.
+     * a decimal point, or a line break at the end of a text file, is skipped; any other character is rejected.
+     *
+     * @param ascii ASCII digits between position and limit, consumed by this call
+     */
+    public void write(ByteBuffer ascii) throws IOException {
+        while (ascii.hasRemaining()) {
+            byte b = ascii.get();
+            if (b == '.' || b == '\n' || b == '\r') continue;
+            if (b < '0' || b > '9') throw new IllegalArgumentException("not a digit: " + (char) b + " after " + count + " digits");
+            writeDigit(b - '0');
+        }
+    }
+
+    /**
+     * @param digit a digit value, {@code 0} to {@code 9}
+     */
+    public void writeDigit(int digit) throws IOException {
+        count++;
+        if (pending < 0) {
+            pending = digit;
+            return;
+        }
+        if (!buffer.hasRemaining()) flush();
+        buffer.put((byte) (pending << 4 | digit));
+        pending = -1;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (pending >= 0) {
+                if (!buffer.hasRemaining()) flush();
+                buffer.put((byte) (pending << 4 | PackedDigits.PADDING));
+                pending = -1;
+            }
+            flush();
+            writeFully(PackedDigits.header(count), 0);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeFully(ByteBuffer bytes, long position) throws IOException {
+        while (bytes.hasRemaining()) position += channel.write(bytes, position);
+    }
+}
@@ -0,0 +1,88 @@
+package info.ankin.pisearch.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Constants and helpers for the packed digit file format, which stores one decimal digit per nibble (BCD).
+ * <pre>
+ *  offset  size  content
+ *  0       4     magic, "PIDG"
+ *  4       1     format version, {@link #VERSION}
+ *  5       3     reserved, zero
+ *  8       8     number of digits, big-endian
+ *  16      ...   digits, two per byte: the first in the high nibble, the second in the low nibble
+ * </pre>
+ * An odd number of digits leaves the last low nibble as {@link #PADDING}.
+ * Only digits are stored, so a decimal point is not part of the file: for pi, digit 0 is the leading 3.
+ */
+public final class PackedDigits {
+    static final int MAGIC = 0x50494447; // PIDG
+    static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    static final int COUNT_OFFSET = 8;
+    static final int PADDING = 0xF;
+
+    private PackedDigits() {
+    }
+
+    /**
+     * @param path any file
+     * @return whether the file starts with the header of a packed digit file
+     */
+    public static boolean isPacked(Path path) throws IOException {
+        if (!Files.isRegularFile(path) || Files.size(path) < HEADER_SIZE) return false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readHeader(channel).getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * @return the first {@link #HEADER_SIZE} bytes of the file, fewer if it is shorter
+     */
+    static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) break;
+        }
+        return header;
+    }
+
+    /**
+     * @param digits number of digits
+     * @return size of the file holding them, header included
+     */
+    public static long fileSize(long digits) {
+        return HEADER_SIZE + (digits + 1) / 2;
+    }
+
+    static ByteBuffer header(long digits) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).put(VERSION).put(new byte[3]).putLong(digits);
+        return header.flip();
+    }
+
+    /**
+     * convert a text file of digits (e.g. {@code digits/pi-digits.txt}) into a packed one, skipping the decimal point
+     *
+     * @param text   ASCII digits
+     * @param packed file to create or overwrite
+     * @return number of digits written
+     */
+    public static long pack(Path text, Path packed) throws IOException {
+        try (FileChannel in = FileChannel.open(text, StandardOpenOption.READ);
+             PackedDigitWriter writer = PackedDigitWriter.create(packed)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                writer.write(buffer);
+                buffer.clear();
+            }
+            return writer.getCount();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package info.ankin.pisearch.format;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * thread pools shared by everything in the process, e.g. generators and index builds running side by side,
+ * instead of one per calculation or per module
+ */
+public final class Pools {
+    /**
+     * for CPU-bound work which never blocks, so one thread per core is enough
+     */
+    public static final ForkJoinPool COMPUTE = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private Pools() {
+    }
+
+    /**
+     * run {@code task} for each of {@code [0, tasks)} on {@link #COMPUTE}, and wait for all of them;
+     * a single task runs on the calling thread. An exception thrown by a task is rethrown here,
+     * and those not started by then are cancelled
+     */
+    public static void forEach(int tasks, IntConsumer task) {
+        if (tasks == 1) {
+            task.accept(0);
+        } else if (tasks > 1) {
+            COMPUTE.invoke(new ForEachTask(0, tasks, task));
+        }
+    }
+
+    /**
+     * halves its range until a single index is left
+     */
+    private static final class ForEachTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final transient IntConsumer task;
+
+        ForEachTask(int from, int to, IntConsumer task) {
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                task.accept(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ForEachTask(from, middle, task), new ForEachTask(middle, to, task));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package info.ankin.pisearch.format;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackedDigitsTest {
+
+    @Test
+    void test_roundTripsDigitsFile(@TempDir Path directory) throws IOException {
+        Path text = Paths.get("../digits/pi-digits.txt");
+        Path packed = directory.resolve("pi-digits.bcd");
+        String expected = Files.readString(text).replace(".", "");
+
+        assertEquals(expected.length(), PackedDigits.pack(text, packed));
+        assertTrue(PackedDigits.isPacked(packed));
+        assertEquals(PackedDigits.fileSize(expected.length()), Files.size(packed));
+
+        try (PackedDigitReader reader = PackedDigitReader.open(packed)) {
+            assertEquals(expected.length(), reader.length());
+            assertEquals(3, reader.digitAt(0));
+            assertEquals(1, reader.digitAt(1));
+
+            // every alignment of offset and length
+            for (int offset = 0; offset < 4; offset++) {
+                for (int length = 0; length < 5; length++) {
+                    byte[] digits = new byte[length];
+                    reader.readAscii(1000 + offset, digits, 0, length);
+                    assertEquals(expected.substring(1000 + offset, 1000 + offset + length), new String(digits, StandardCharsets.US_ASCII));
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_corruptFilesAreClosed(@TempDir Path directory) throws IOException {
+        Path packed = directory.resolve("pi-digits.bcd");
+        PackedDigits.pack(Paths.get("../digits/pi-digits.txt"), packed);
+        byte[] bytes = Files.readAllBytes(packed);
+
+        byte[] badMagic = bytes.clone();
+        badMagic[0] ^= 1;
+        byte[] badVersion = bytes.clone();
+        badVersion[4]++;
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+        byte[] header = Arrays.copyOf(bytes, 3);
+
+        for (byte[] corrupt : Arrays.asList(badMagic, badVersion, truncated, header)) {
+            Path file = directory.resolve("corrupt.bcd");
+            Files.write(file, corrupt);
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            assertThrows(IOException.class, () -> PackedDigitReader.open(channel));
+            assertFalse(channel.isOpen());
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package info.ankin.pisearch.generation;
+
+import info.ankin.pisearch.format.Pools;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Computes hexadecimal digits of pi at an arbitrary position without computing any of the digits before it,
+ * using the Bailey-Borwein-Plouffe formula
+ * {@code pi = sum 16^-k (4/(8k+1) - 2/(8k+4) - 1/(8k+5) - 1/(8k+6))}.
+ * <p>
+ * Multiplying by {@code 16^d} and keeping only the fractional part, the head of each series becomes
+ * {@code sum (16^(d-k) mod (8k+j)) / (8k+j)}, which needs nothing more than modular exponentiation on {@code long}s
+ * and a {@code double} accumulator, so the inner loops do not allocate.
+ * Each evaluation is good for {@link #DIGITS_PER_EVALUATION} hex digits;
+ * longer requests are split into evaluations which run in parallel.
+ *
+ * @see <a href="https://www.davidhbailey.com/dhbpapers/bbp-alg.pdf">The BBP Algorithm for Pi</a>
+ */
+public class BbpDigitExtractor {
+    /**
+     * hex digits which are reliable from a single evaluation at double precision
+     */
+    static final int DIGITS_PER_EVALUATION = 8;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    /**
+     * moduli below this can be multiplied without overflowing a {@code long}
+     */
+    private static final long SMALL_MODULUS = 1L << 31;
+
+    /**
+     * convert (part of) a decimal expansion to hex, for comparing with {@link #hexDigitsAt(long, int)}.
+     *
+     * @param pi       pi to some number of decimal places, e.g. from {@link BinarySplittingPiGenerator}
+     * @param position index of the first hex digit after the point, starting from zero
+     * @param count    number of hex digits
+     * @return the hex digits, which are only trustworthy if {@code pi} has enough decimal places to determine them
+     */
+    public static String hexDigitsOf(BigDecimal pi, long position, int count) {
+        BigInteger fraction = pi.subtract(new BigDecimal(pi.toBigInteger()))
+                .multiply(new BigDecimal(BigInteger.ONE.shiftLeft(Math.toIntExact(4 * (position + count)))))
+                .toBigInteger();
+        String hex = fraction.and(BigInteger.ONE.shiftLeft(4 * count).subtract(BigInteger.ONE)).toString(16);
+        return "0".repeat(count - hex.length()) + hex.toUpperCase();
+    }
+
+    /**
+     * @param position index of the first hex digit after the point, starting from zero (so position 0 is "2")
+     * @param count    number of hex digits
+     * @return the hex digits of pi from {@code position}, upper case
+     */
+    public String hexDigitsAt(long position, int count) {
+        if (position < 0) throw new IllegalArgumentException("position must not be negative: " + position);
+        if (count < 0) throw new IllegalArgumentException("count must not be negative: " + count);
+
+        char[] result = new char[count];
+        int evaluations = (count + DIGITS_PER_EVALUATION - 1) / DIGITS_PER_EVALUATION;
+        Pools.forEach(evaluations, i -> {
+            int offset = i * DIGITS_PER_EVALUATION;
+            writeHex(fractionAt(position + offset), result, offset, Math.min(DIGITS_PER_EVALUATION, count - offset));
+        });
+        return new String(result);
+    }
+
+    /**
+     * @return the fractional part of {@code 16^d * pi}
+     */
+    static double fractionAt(long d) {
+        double x = 4 * series(1, d) - 2 * series(4, d) - series(5, d) - series(6, d);
+        return x - Math.floor(x);
+    }
+
+    /**
+     * the fractional part of {@code sum 16^(d-k) / (8k+j)} over all {@code k >= 0}
+     */
+    static double series(int j, long d) {
+        double sum = 0;
+        // head: 16^(d-k) is an integer, so only its remainder contributes to the fraction
+        for (long k = 0; k <= d; k++) {
+            long m = 8 * k + j;
+            sum += (double) powMod16(d - k, m) / m;
+            sum -= (long) sum;
+        }
+        // tail: terms shrink by a factor of 16 each, and soon fall below double precision
+        double power = 1.0 / 16;
+        for (long k = d + 1; ; k++) {
+            double term = power / (8 * k + j);
+            if (term < 1e-17) break;
+            sum += term;
+            power /= 16;
+        }
+        return sum - Math.floor(sum);
+    }
+
+    /**
+     * @return {@code 16^exponent mod modulus}, by square-and-multiply
+     */
+    static long powMod16(long exponent, long modulus) {
+        if (modulus == 1) return 0;
+        long result = 1;
+        long base = 16 % modulus;
+        while (exponent > 0) {
+            if ((exponent & 1) == 1) result = mulMod(result, base, modulus);
+            base = mulMod(base, base, modulus);
+            exponent >>= 1;
+        }
+        return result;
+    }
+
+    /**
+     * {@code a * b mod m} for {@code 0 <= a, b < m < 2^52}, which covers any position that is feasible to compute
+     */
+    static long mulMod(long a, long b, long m) {
+        if (m < SMALL_MODULUS) return a * b % m;
+        // the quotient estimated in floating point is off by at most one in either direction,
+        // and the wrapped-around products still differ by exactly the remainder
+        long q = (long) ((double) a * b / m);
+        long r = a * b - q * m;
+        if (r < 0) r += m;
+        if (r >= m) r -= m;
+        return r;
+    }
+
+    private static void writeHex(double fraction, char[] result, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            fraction *= 16;
+            int digit = (int) fraction;
+            result[offset + i] = HEX[digit];
+            fraction -= digit;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package info.ankin.pisearch.generation;
+
+import info.ankin.pisearch.format.Pools;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes digits of pi with the Chudnovsky series, evaluated by binary splitting.
+ * <p>
+ * Unlike {@link PiGenerator}, which evaluates every term on its own with {@link BigDecimal} arithmetic,
+ * this sums the whole series as one exact fraction over {@link BigInteger}s:
+ * the term range {@code [a, b)} is split in half recursively and the halves combined with a few multiplications,
+ * so the cost is dominated by a handful of huge multiplications
+ * instead of re-deriving factorials and fractional powers for each term.
+ * A single division and a single integer square root at the end turn the fraction into digits.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Chudnovsky_algorithm">Chudnovsky algorithm</a>
+ * @see <a href="http://numbers.computation.free.fr/Constants/Algorithms/splitting.html">binary splitting method</a>
+ */
+public class BinarySplittingPiGenerator {
+    /**
+     * each term of the series contributes this many (decimal) digits
+     */
+    public static final double DIGITS_PER_TERM = Math.log10(151_931_373_056_000.0);
+    /**
+     * extra digits carried through the final division, dropped (truncated) before returning
+     */
+    static final int GUARD_DIGITS = 16;
+    static final BigInteger A = BigInteger.valueOf(13_591_409);
+    static final BigInteger B = BigInteger.valueOf(545_140_134);
+    /**
+     * {@code 640320^3 / 24}
+     */
+    static final BigInteger C3_OVER_24 = BigInteger.valueOf(640_320).pow(3).divide(BigInteger.valueOf(24));
+    private static final BigInteger SQRT_C = BigInteger.valueOf(10_005);
+    private static final BigInteger MULTIPLIER = BigInteger.valueOf(426_880);
+    /**
+     * operands at least this many bits long are multiplied on separate threads when combining
+     */
+    private static final int PARALLEL_MULTIPLY_BITS = 1 << 18;
+
+    /**
+     * whether to split the series over {@link Pools#COMPUTE}
+     */
+    private boolean parallel;
+    /**
+     * ranges of fewer terms than this are summed sequentially
+     */
+    private int parallelThreshold = 256;
+
+    /**
+     * how many terms of the series are needed for a given number of decimal places
+     *
+     * @param digits number of digits after the decimal point
+     * @return number of terms to sum
+     */
+    public static int termsFor(int digits) {
+        return (int) ((digits + GUARD_DIGITS) / DIGITS_PER_TERM) + 2;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public BinarySplittingPiGenerator setParallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public BinarySplittingPiGenerator setParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold < 1) throw new IllegalArgumentException("threshold must be positive: " + parallelThreshold);
+        this.parallelThreshold = parallelThreshold;
+        return this;
+    }
+
+    /**
+     * calculate pi, truncated (not rounded) to {@code digits} places after the decimal point,
+     * which is the same form the files in {@code /digits/} are in.
+     *
+     * @param digits number of digits after the decimal point
+     * @return pi with a scale of {@code digits}
+     */
+    public BigDecimal calculate(int digits) {
+        return new BigDecimal(scaledPi(digits), digits);
+    }
+
+    /**
+     * @param digits number of digits after the decimal point
+     * @return {@code floor(pi * 10^digits)}
+     */
+    public BigInteger scaledPi(int digits) {
+        if (digits < 0) throw new IllegalArgumentException("digits must not be negative: " + digits);
+        if (!parallel) return fromSeries(sum(0, termsFor(digits)), sqrtC(digits), digits);
+
+        // the square root does not depend on the series, so it is computed alongside it
+        ForkJoinTask<BigInteger> sqrtC = Pools.COMPUTE.submit(() -> sqrtC(digits));
+        PQT pqt = sum(0, termsFor(digits));
+        return fromSeries(pqt, sqrtC.join(), digits);
+    }
+
+    /**
+     * sum the terms {@code [a, b)} of the series
+     */
+    PQT sum(long a, long b) {
+        if (!parallel) return split(a, b);
+        return Pools.COMPUTE.invoke(new SplitTask(a, b, parallelThreshold));
+    }
+
+    /**
+     * combine the sums of two adjacent ranges, on {@link Pools#COMPUTE} if {@link #isParallel()}
+     */
+    PQT combine(PQT left, PQT right) {
+        if (!parallel) return left.combine(right);
+        return Pools.COMPUTE.invoke(ForkJoinTask.adapt(() -> left.combineForked(right)));
+    }
+
+    /**
+     * turns the summed series into {@code floor(pi * 10^digits)}
+     *
+     * @param pqt    the series summed from term 0
+     * @param sqrtC  {@link #sqrtC(int)} for the same number of digits
+     * @param digits number of digits after the decimal point
+     * @return pi scaled up by {@code 10^digits}, truncated
+     */
+    static BigInteger fromSeries(PQT pqt, BigInteger sqrtC, int digits) {
+        BigInteger pi = MULTIPLIER.multiply(sqrtC).multiply(pqt.q).divide(pqt.t);
+        return pi.divide(BigInteger.TEN.pow(GUARD_DIGITS));
+    }
+
+    /**
+     * @param digits number of digits after the decimal point
+     * @return {@code sqrt(10005)}, scaled up by {@code 10^(digits + GUARD_DIGITS)}
+     */
+    static BigInteger sqrtC(int digits) {
+        int scale = digits + GUARD_DIGITS;
+        return sqrt(SQRT_C.multiply(BigInteger.TEN.pow(2 * scale)));
+    }
+
+    /**
+     * integer square root, {@code floor(sqrt(n))}.
+     * <p>
+     * {@link BigInteger#sqrt()} iterates Newton's method at full precision from a poor first guess,
+     * which dominates the runtime for millions of digits;
+     * this instead takes the root of the top half of the bits recursively
+     * and refines it with a single full-precision Newton step.
+     *
+     * @param n non-negative number
+     * @return the largest integer whose square is not greater than {@code n}
+     */
+    static BigInteger sqrt(BigInteger n) {
+        int bits = n.bitLength();
+        if (bits < 1024) return n.sqrt();
+
+        int k = bits / 4;
+        BigInteger r = sqrt(n.shiftRight(2 * k)).shiftLeft(k);
+        // one Newton step roughly doubles the number of correct bits, and overshoots if anything
+        r = r.add(n.divide(r)).shiftRight(1);
+        while (r.multiply(r).compareTo(n) > 0) r = r.subtract(BigInteger.ONE);
+        return r;
+    }
+
+    /**
+     * sequential binary splitting over the terms {@code [a, b)}
+     */
+    static PQT split(long a, long b) {
+        if (b - a == 1) return term(a);
+        long m = (a + b) >>> 1;
+        return split(a, m).combine(split(m, b));
+    }
+
+    /**
+     * the P, Q and T of the single term {@code a}
+     */
+    static PQT term(long a) {
+        if (a == 0) return new PQT(BigInteger.ONE, BigInteger.ONE, A);
+
+        BigInteger bigA = BigInteger.valueOf(a);
+        BigInteger p = BigInteger.valueOf(6 * a - 5)
+                .multiply(BigInteger.valueOf(2 * a - 1))
+                .multiply(BigInteger.valueOf(6 * a - 1));
+        BigInteger q = bigA.multiply(bigA).multiply(bigA).multiply(C3_OVER_24);
+        BigInteger t = p.multiply(A.add(B.multiply(bigA)));
+        return new PQT(p, q, (a & 1) == 1 ? t.negate() : t);
+    }
+
+    /**
+     * partial result of binary splitting for a range of terms {@code [a, b)}
+     */
+    static final class PQT {
+        final BigInteger p;
+        final BigInteger q;
+        final BigInteger t;
+
+        PQT(BigInteger p, BigInteger q, BigInteger t) {
+            this.p = p;
+            this.q = q;
+            this.t = t;
+        }
+
+        /**
+         * combine the result for {@code [a, m)} (this) with the one for {@code [m, b)}
+         *
+         * @param right the result for the following range
+         * @return the result for {@code [a, b)}
+         */
+        PQT combine(PQT right) {
+            return new PQT(p.multiply(right.p),
+                    q.multiply(right.q),
+                    t.multiply(right.q).add(p.multiply(right.t)));
+        }
+
+        /**
+         * like {@link #combine(PQT)}, but forks the multiplications when they are large enough to be worth it.
+         * must be called from within a {@link ForkJoinPool}.
+         */
+        PQT combineForked(PQT right) {
+            if (q.bitLength() < PARALLEL_MULTIPLY_BITS) return combine(right);
+
+            ForkJoinTask<BigInteger> pp = ForkJoinTask.adapt(() -> p.multiply(right.p)).fork();
+            ForkJoinTask<BigInteger> qq = ForkJoinTask.adapt(() -> q.multiply(right.q)).fork();
+            ForkJoinTask<BigInteger> pt = ForkJoinTask.adapt(() -> p.multiply(right.t)).fork();
+            BigInteger tq = t.multiply(right.q);
+            return new PQT(pp.join(), qq.join(), tq.add(pt.join()));
+        }
+    }
+
+    /**
+     * parallel binary splitting over the terms {@code [a, b)}:
+     * halves are forked until they are smaller than the threshold, then summed with {@link #split(long, long)}
+     */
+    static final class SplitTask extends RecursiveTask<PQT> {
+        private static final long serialVersionUID = 1L;
+
+        private final long a;
+        private final long b;
+        private final int threshold;
+
+        SplitTask(long a, long b, int threshold) {
+            this.a = a;
+            this.b = b;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected PQT compute() {
+            if (b - a <= threshold) return split(a, b);
+
+            long m = (a + b) >>> 1;
+            SplitTask left = new SplitTask(a, m, threshold);
+            left.fork();
+            PQT right = new SplitTask(m, b, threshold).compute();
+            return left.join().combineForked(right);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package info.ankin.pisearch.generation;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Runs {@link BinarySplittingPiGenerator} so that a long calculation survives a crash or restart.
+ * <p>
+ * The term range is cut into chunks of {@link #getChunkTerms()} terms, and the chunks are combined as a binary tree.
+ * Every finished node of that tree (a chunk, or two combined subtrees) is written to the checkpoint directory
+ * as {@code pqt-<from>-<to>.bin}, and the checkpoints of its children are deleted once it is safely on disk.
+ * On restart, any node whose checkpoint exists is read back instead of being computed again,
+ * so at most the work since the last finished node is lost.
+ * A checkpoint which cannot be read, e.g. cut short or damaged, is treated as missing and its node computed again.
+ * <p>
+ * Each checkpoint is forced to disk, and so is the directory after it has been moved into place,
+ * before the checkpoints of its children are deleted, so that a machine which stops at any point
+ * still has every finished node either in the parent's checkpoint or in its children's.
+ * <p>
+ * The P/Q/T of a term range does not depend on how many digits are wanted,
+ * so checkpoints are reused as long as the chunk size stays the same.
+ */
+public class CheckpointedPiGenerator {
+    private static final int MAGIC = 0x50515432; // PQT2
+    private static final String PREFIX = "pqt-";
+    private static final String SUFFIX = ".bin";
+
+    private final BinarySplittingPiGenerator generator;
+    private final Path directory;
+    private final int chunkTerms;
+
+    public CheckpointedPiGenerator(BinarySplittingPiGenerator generator, Path directory) {
+        this(generator, directory, 1 << 14);
+    }
+
+    /**
+     * @param generator  does the actual calculation of each chunk
+     * @param directory  where checkpoints are kept, created if missing
+     * @param chunkTerms number of terms in the smallest checkpointed range
+     */
+    public CheckpointedPiGenerator(BinarySplittingPiGenerator generator, Path directory, int chunkTerms) {
+        if (chunkTerms < 1) throw new IllegalArgumentException("chunk must have at least one term: " + chunkTerms);
+        this.generator = generator;
+        this.directory = directory;
+        this.chunkTerms = chunkTerms;
+    }
+
+    public int getChunkTerms() {
+        return chunkTerms;
+    }
+
+    /**
+     * like {@link BinarySplittingPiGenerator#scaledPi(int)}, but resuming from and writing checkpoints
+     *
+     * @param digits number of digits after the decimal point
+     * @return {@code floor(pi * 10^digits)}
+     */
+    public BigInteger scaledPi(int digits) throws IOException {
+        if (digits < 0) throw new IllegalArgumentException("digits must not be negative: " + digits);
+        Files.createDirectories(directory);
+
+        long terms = BinarySplittingPiGenerator.termsFor(digits);
+        long chunks = (terms + chunkTerms - 1) / chunkTerms;
+        BinarySplittingPiGenerator.PQT pqt = node(0, chunks, terms);
+        return BinarySplittingPiGenerator.fromSeries(pqt, BinarySplittingPiGenerator.sqrtC(digits), digits);
+    }
+
+    /**
+     * the sum over the chunks {@code [from, to)}, from a checkpoint if there is one
+     */
+    private BinarySplittingPiGenerator.PQT node(long from, long to, long terms) throws IOException {
+        long a = from * chunkTerms;
+        long b = Math.min(to * chunkTerms, terms);
+        Path path = path(a, b);
+        if (Files.exists(path)) {
+            BinarySplittingPiGenerator.PQT checkpoint = read(path, a, b);
+            if (checkpoint != null) return checkpoint;
+        }
+
+        BinarySplittingPiGenerator.PQT pqt;
+        if (to - from == 1) {
+            pqt = generator.sum(a, b);
+            write(path, a, b, pqt);
+        } else {
+            long m = (from + to) >>> 1;
+            BinarySplittingPiGenerator.PQT left = node(from, m, terms);
+            BinarySplittingPiGenerator.PQT right = node(m, to, terms);
+            pqt = generator.combine(left, right);
+            write(path, a, b, pqt);
+            // the children are only needed until their parent is durable
+            Files.deleteIfExists(path(a, m * chunkTerms));
+            Files.deleteIfExists(path(m * chunkTerms, b));
+        }
+        return pqt;
+    }
+
+    private Path path(long a, long b) {
+        return directory.resolve(PREFIX + a + "-" + b + SUFFIX);
+    }
+
+    /**
+     * writes to a temporary file first and then moves it into place,
+     * so a crash while writing never leaves a truncated checkpoint behind
+     */
+    private void write(Path path, long a, long b, BinarySplittingPiGenerator.PQT pqt) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeLong(a);
+            out.writeLong(b);
+            writeBigInteger(out, pqt.p);
+            writeBigInteger(out, pqt.q);
+            writeBigInteger(out, pqt.t);
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+    }
+
+    /**
+     * make the last move durable, before the caller deletes anything on the strength of it
+     */
+    private void forceDirectory() throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // e.g. on Windows, where directories cannot be opened, and a move is durable once it returns
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @return the checkpoint, or null if it is not a complete and intact checkpoint of terms {@code [a, b)}
+     */
+    private BinarySplittingPiGenerator.PQT read(Path path, long a, long b) throws IOException {
+        long size = Files.size(path);
+        CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(path)), new CRC32());
+        try (DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC || in.readLong() != a || in.readLong() != b) return null;
+            BinarySplittingPiGenerator.PQT pqt = new BinarySplittingPiGenerator.PQT(
+                    readBigInteger(in, size), readBigInteger(in, size), readBigInteger(in, size));
+            long checksum = checked.getChecksum().getValue();
+            return in.readLong() == checksum && in.read() < 0 ? pqt : null;
+        } catch (EOFException | NumberFormatException e) {
+            // cut short, or zero bytes where a number should be
+            return null;
+        }
+    }
+
+    private static void writeBigInteger(DataOutputStream out, BigInteger value) throws IOException {
+        byte[] bytes = value.toByteArray();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param size of the whole file, which a damaged length could be larger than
+     */
+    private static BigInteger readBigInteger(DataInputStream in, long size) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > size) throw new EOFException("checkpoint holds a number of " + length + " bytes");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new BigInteger(bytes);
+    }
+}
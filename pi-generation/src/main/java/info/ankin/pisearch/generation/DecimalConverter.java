@@ -0,0 +1,118 @@
+package info.ankin.pisearch.generation;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts a (very large) {@link BigInteger} to decimal digits and streams them to a {@link DigitSink}
+ * in fixed-size blocks, without ever building the whole number as a {@link String}.
+ * <p>
+ * Uses divide-and-conquer radix conversion: the number is split by a power of ten into a high and a low half,
+ * each converted recursively, until the pieces are small enough for {@link BigInteger#toString()}.
+ * The powers of ten used for splitting are {@code 10^(LEAF_DIGITS * 2^i)},
+ * so only a logarithmic number of them are ever computed, each by squaring the previous one.
+ */
+public class DecimalConverter {
+    /**
+     * pieces of at most this many digits are converted with {@link BigInteger#toString()}
+     */
+    static final int LEAF_DIGITS = 1 << 9;
+    /**
+     * default size of the blocks handed to the sink
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /**
+     * {@code 10^(LEAF_DIGITS * 2^i)} at index {@code i}
+     */
+    private final List<BigInteger> powers = new ArrayList<>();
+    private final ByteBuffer block;
+    private final DigitSink sink;
+
+    public DecimalConverter(DigitSink sink) {
+        this(sink, DEFAULT_BLOCK_SIZE);
+    }
+
+    public DecimalConverter(DigitSink sink, int blockSize) {
+        this.sink = sink;
+        this.block = ByteBuffer.allocate(blockSize);
+        powers.add(BigInteger.TEN.pow(LEAF_DIGITS));
+    }
+
+    /**
+     * write pi with {@code digits} places after the decimal point (e.g. {@code 3.14}), given
+     *
+     * @param scaledPi {@code floor(pi * 10^digits)}, as returned by {@link BinarySplittingPiGenerator#scaledPi(int)}
+     * @param digits   number of digits after the decimal point
+     */
+    public void writePi(BigInteger scaledPi, int digits) throws IOException {
+        BigInteger[] parts = scaledPi.divideAndRemainder(BigInteger.TEN.pow(digits));
+        write(parts[0].toString());
+        if (digits > 0) {
+            write(".");
+            write(parts[1], digits);
+        }
+        flush();
+    }
+
+    /**
+     * write the digits of a number, left-padded with zeros
+     *
+     * @param value  a non-negative number smaller than {@code 10^digits}
+     * @param digits exact number of digits to write
+     */
+    public void write(BigInteger value, long digits) throws IOException {
+        if (digits <= LEAF_DIGITS) {
+            String leaf = value.toString();
+            for (long i = leaf.length(); i < digits; i++) put((byte) '0');
+            write(leaf);
+            return;
+        }
+
+        // the largest power of the ladder which still leaves some digits in the high part
+        int level = 0;
+        while ((long) LEAF_DIGITS << (level + 1) < digits) level++;
+        long lowDigits = (long) LEAF_DIGITS << level;
+
+        BigInteger[] parts = value.divideAndRemainder(power(level));
+        write(parts[0], digits - lowDigits);
+        write(parts[1], lowDigits);
+    }
+
+    /**
+     * hand any buffered digits to the sink
+     */
+    public void flush() throws IOException {
+        block.flip();
+        if (block.hasRemaining()) sink.accept(block);
+        block.clear();
+    }
+
+    private BigInteger power(int level) {
+        while (powers.size() <= level) {
+            BigInteger last = powers.get(powers.size() - 1);
+            powers.add(last.multiply(last));
+        }
+        return powers.get(level);
+    }
+
+    private void write(String ascii) throws IOException {
+        byte[] bytes = ascii.getBytes(StandardCharsets.US_ASCII);
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!block.hasRemaining()) flush();
+            int length = Math.min(block.remaining(), bytes.length - offset);
+            block.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (!block.hasRemaining()) flush();
+        block.put(b);
+    }
+}
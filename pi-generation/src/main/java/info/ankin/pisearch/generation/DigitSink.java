@@ -0,0 +1,23 @@
+package info.ankin.pisearch.generation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * receives generated digits as ASCII characters, one block at a time, most significant digits first
+ */
+public interface DigitSink extends Closeable {
+    /**
+     * consume the remaining bytes of a block.
+     * the buffer is reused by the caller once this returns, so it must not be retained.
+     *
+     * @param block ASCII digits, between position and limit
+     * @throws IOException if the digits could not be written
+     */
+    void accept(ByteBuffer block) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
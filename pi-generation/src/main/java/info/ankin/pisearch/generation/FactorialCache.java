@@ -0,0 +1,242 @@
+package info.ankin.pisearch.generation;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of factorials and of the Chudnovsky factorial ratio {@code (6k)! / ((3k)! (k!)^3)}.
+ * <p>
+ * A missing value is derived from the closest smaller cached one, by multiplying in only the factors in between,
+ * rather than recursing all the way down to zero: so nothing is ever recomputed from scratch
+ * when walking the terms in order, and there is no recursion which could overflow the stack.
+ * <p>
+ * The total size of the cached numbers is capped; once over the cap,
+ * the least recently used values are evicted first.
+ * All methods are safe to call concurrently; the multiplications run outside the lock.
+ */
+public class FactorialCache {
+    /**
+     * default for {@link #getMaxBytes()}
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private final long maxBytes;
+    /**
+     * every cached value, in access order, for eviction
+     */
+    private final LinkedHashMap<Key, BigInteger> lru = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * the same values, sorted, to find the closest smaller one
+     */
+    private final TreeMap<Long, BigInteger> factorials = new TreeMap<>();
+    private final TreeMap<Long, BigInteger> ratios = new TreeMap<>();
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public FactorialCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes upper bound for the combined size of all cached numbers
+     */
+    public FactorialCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * multiply all integers in {@code [from, to]}, as a balanced product tree
+     *
+     * @return the product, or one if the range is empty
+     */
+    public static BigInteger product(long from, long to) {
+        if (from > to) return BigInteger.ONE;
+        if (to - from < 8) {
+            BigInteger result = BigInteger.valueOf(from);
+            for (long i = from + 1; i <= to; i++) result = result.multiply(BigInteger.valueOf(i));
+            return result;
+        }
+        long m = (from + to) >>> 1;
+        return product(from, m).multiply(product(m + 1, to));
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param n non-negative number
+     * @return {@code n!}
+     */
+    public BigInteger factorial(long n) {
+        if (n < 0) throw new IllegalArgumentException("factorial of negative number: " + n);
+
+        Map.Entry<Long, BigInteger> floor = floor(Kind.FACTORIAL, factorials, n);
+        if (floor != null && floor.getKey() == n) return floor.getValue();
+
+        long from = floor == null ? 0 : floor.getKey();
+        BigInteger value = floor == null ? BigInteger.ONE : floor.getValue();
+        value = value.multiply(product(from + 1, n));
+        put(Kind.FACTORIAL, factorials, n, value);
+        return value;
+    }
+
+    /**
+     * the factorial part of the k-th Chudnovsky term, which is always an integer.
+     * derived from a previous term's ratio {@code r(j)} as
+     * {@code r(k) = r(j) * (6j+1)...(6k) / ((3j+1)...(3k) * ((j+1)...k)^3)}
+     *
+     * @param k non-negative term index
+     * @return {@code (6k)! / ((3k)! (k!)^3)}
+     */
+    public BigInteger termRatio(long k) {
+        if (k < 0) throw new IllegalArgumentException("term index must not be negative: " + k);
+
+        Map.Entry<Long, BigInteger> floor = floor(Kind.RATIO, ratios, k);
+        if (floor != null && floor.getKey() == k) return floor.getValue();
+
+        long j = floor == null ? 0 : floor.getKey();
+        BigInteger value = floor == null ? BigInteger.ONE : floor.getValue();
+        BigInteger kFactors = product(j + 1, k);
+        BigInteger denominator = product(3 * j + 1, 3 * k).multiply(kFactors.pow(3));
+        value = value.multiply(product(6 * j + 1, 6 * k)).divide(denominator);
+        put(Kind.RATIO, ratios, k, value);
+        return value;
+    }
+
+    public Stats getStats() {
+        synchronized (lru) {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), lru.size(), bytes);
+        }
+    }
+
+    public void clear() {
+        synchronized (lru) {
+            lru.clear();
+            factorials.clear();
+            ratios.clear();
+            bytes = 0;
+        }
+    }
+
+    private Map.Entry<Long, BigInteger> floor(Kind kind, TreeMap<Long, BigInteger> sorted, long n) {
+        synchronized (lru) {
+            Map.Entry<Long, BigInteger> floor = sorted.floorEntry(n);
+            if (floor == null) {
+                misses.increment();
+                return null;
+            }
+            // touch, so that the entry counts as recently used
+            lru.get(new Key(kind, floor.getKey()));
+            (floor.getKey() == n ? hits : misses).increment();
+            return floor;
+        }
+    }
+
+    private void put(Kind kind, TreeMap<Long, BigInteger> sorted, long n, BigInteger value) {
+        long size = sizeOf(value);
+        if (size > maxBytes) return;
+
+        synchronized (lru) {
+            if (lru.put(new Key(kind, n), value) != null) return;
+            sorted.put(n, value);
+            bytes += size;
+
+            Iterator<Map.Entry<Key, BigInteger>> iterator = lru.entrySet().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<Key, BigInteger> eldest = iterator.next();
+                iterator.remove();
+                (eldest.getKey().kind == Kind.FACTORIAL ? factorials : ratios).remove(eldest.getKey().n);
+                bytes -= sizeOf(eldest.getValue());
+                evictions.increment();
+            }
+        }
+    }
+
+    private static long sizeOf(BigInteger value) {
+        return value.bitLength() / 8 + 1;
+    }
+
+    private enum Kind {FACTORIAL, RATIO}
+
+    private static final class Key {
+        private final Kind kind;
+        private final long n;
+
+        private Key(Kind kind, long n) {
+            this.kind = kind;
+            this.n = n;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return n == key.n && kind == key.kind;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, n);
+        }
+    }
+
+    /**
+     * point-in-time counters of a {@link FactorialCache}
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final long bytes;
+
+        Stats(long hits, long misses, long evictions, int entries, long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits: %d, misses: %d (hit rate %.1f%%), evictions: %d, entries: %d, %.3fMB",
+                    hits, misses, 100 * getHitRate(), evictions, entries, bytes / 1_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package info.ankin.pisearch.generation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * writes digit blocks straight to a file through a {@link FileChannel}
+ */
+public class FileDigitSink implements DigitSink {
+    private final FileChannel channel;
+
+    public FileDigitSink(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * create (or truncate) the file at {@code path}
+     */
+    public static FileDigitSink create(Path path) throws IOException {
+        return new FileDigitSink(FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    @Override
+    public void accept(ByteBuffer block) throws IOException {
+        while (block.hasRemaining()) channel.write(block);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,7 +1,24 @@
 package info.ankin.pisearch.generation;
 
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Paths;
+
 public class Generate {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && "binary-splitting".equals(args[0])) {
+            binarySplitting(args);
+            return;
+        }
+        if (args.length > 0 && "stream".equals(args[0])) {
+            stream(args);
+            return;
+        }
+        if (args.length > 0 && "bbp".equals(args[0])) {
+            bbp(args);
+            return;
+        }
+
         int precision = args.length > 0 ? Integer.parseInt(args[0], 10) : 20;
         int toGenerate = args.length > 1 ? Integer.parseInt(args[1], 10) : 10;
         boolean useCache = args.length <= 2 || Boolean.parseBoolean(args[2]);
@@ -9,6 +26,49 @@ public class Generate {
         PiGenerator piGenerator = new PiGenerator(precision)
                 .setUseCache(useCache);
         System.out.println(piGenerator.calculate(toGenerate));
+        if (useCache) System.err.println("cache " + piGenerator.getCache().getStats());
+    }
+
+    /**
+     * {@code binary-splitting [digits] [parallel]}
+     */
+    static void binarySplitting(String[] args) {
+        int digits = args.length > 1 ? Integer.parseInt(args[1], 10) : 20;
+        boolean parallel = args.length <= 2 || Boolean.parseBoolean(args[2]);
+        System.err.println("printing PI with " + digits + " digits, using binary splitting, parallel: " + parallel);
+        System.out.print(new BinarySplittingPiGenerator().setParallel(parallel).calculate(digits));
+    }
+
+    /**
+     * {@code stream [digits] [file] [parallel] [checkpoint-directory]},
+     * where a file ending in {@code .bcd} is written in the packed format, one digit per nibble
+     */
+    static void stream(String[] args) throws IOException {
+        int digits = args.length > 1 ? Integer.parseInt(args[1], 10) : 20;
+        String file = args.length > 2 ? args[2] : "pi-digits.txt";
+        boolean parallel = args.length <= 3 || Boolean.parseBoolean(args[3]);
+        String checkpoints = args.length > 4 ? args[4] : null;
+        System.err.println("writing PI with " + digits + " digits to " + file + ", parallel: " + parallel + ", checkpoints: " + checkpoints);
+
+        BinarySplittingPiGenerator generator = new BinarySplittingPiGenerator().setParallel(parallel);
+        BigInteger scaledPi = checkpoints == null
+                ? generator.scaledPi(digits)
+                : new CheckpointedPiGenerator(generator, Paths.get(checkpoints)).scaledPi(digits);
+        try (DigitSink sink = file.endsWith(".bcd")
+                ? PackedDigitSink.create(Paths.get(file))
+                : FileDigitSink.create(Paths.get(file))) {
+            new DecimalConverter(sink).writePi(scaledPi, digits);
+        }
+    }
+
+    /**
+     * {@code bbp [position] [count]}
+     */
+    static void bbp(String[] args) {
+        long position = args.length > 1 ? Long.parseLong(args[1], 10) : 0;
+        int count = args.length > 2 ? Integer.parseInt(args[2], 10) : 16;
+        System.err.println("printing " + count + " hex digits of PI from position " + position);
+        System.out.println(new BbpDigitExtractor().hexDigitsAt(position, count));
     }
 
 }
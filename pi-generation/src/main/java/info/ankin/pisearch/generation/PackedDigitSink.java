@@ -0,0 +1,35 @@
+package info.ankin.pisearch.generation;
+
+import info.ankin.pisearch.format.PackedDigitWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * writes digit blocks as a packed (one digit per nibble) file, see {@link info.ankin.pisearch.format.PackedDigits}
+ */
+public class PackedDigitSink implements DigitSink {
+    private final PackedDigitWriter writer;
+
+    public PackedDigitSink(PackedDigitWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * create (or truncate) the file at {@code path}
+     */
+    public static PackedDigitSink create(Path path) throws IOException {
+        return new PackedDigitSink(PackedDigitWriter.create(path));
+    }
+
+    @Override
+    public void accept(ByteBuffer block) throws IOException {
+        writer.write(block);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -1,25 +1,19 @@
 package info.ankin.pisearch.generation;
 
 import ch.obermuhlner.math.big.BigDecimalMath;
+import info.ankin.pisearch.format.Pools;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.MathContext;
 import java.math.RoundingMode;
-import java.util.Map;
-import java.util.NavigableMap;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Supplier;
 
 /**
  * @see <a href="https://stackoverflow.com/a/46166848">original answer on SO</a>
  */
 public class PiGenerator {
-    /**
-     * This can/should be obscenely large as it will (should) be made up of idle threads
-     */
-    private static final ForkJoinPool FJP = new ForkJoinPool(500);
     /**
      * @see <a href="https://stackoverflow.com/a/3334187">IEEE reference from SO</a>
      */
@@ -29,32 +23,32 @@ public class PiGenerator {
     /**
      * Optional cache
      */
-    private final NavigableMap<BigInteger, BigInteger> map;
+    private final FactorialCache cache;
     /**
      * {@link MathContext} which specifies precision for {@link BigDecimal} operations
      */
     private final MathContext mathContext;
     /**
-     * Configuration setting for whether {@link #map} is enabled - todo use null instead
+     * Configuration setting for whether {@link #cache} is enabled - todo use null instead
      */
     private boolean useCache;
 
     public PiGenerator() {
-        this(new ConcurrentSkipListMap<>(),
+        this(new FactorialCache(),
                 new MathContext(MAX_DECIMALS_IN_FLOAT + 1, RoundingMode.HALF_UP));
     }
 
     public PiGenerator(int precision) {
-        this(new ConcurrentSkipListMap<>(), new MathContext(precision, RoundingMode.HALF_UP));
+        this(new FactorialCache(), new MathContext(precision, RoundingMode.HALF_UP));
     }
 
-    public PiGenerator(NavigableMap<BigInteger, BigInteger> map, MathContext mathContext) {
-        this.map = map;
+    public PiGenerator(FactorialCache cache, MathContext mathContext) {
+        this.cache = cache;
         this.mathContext = mathContext;
     }
 
-    private static <T> CompletableFuture<T> toFjpCf(Future<T> future) {
-        return CompletableFuture.supplyAsync(ThrowingCallable.supplier(future::get), FJP);
+    public FactorialCache getCache() {
+        return cache;
     }
 
     public boolean isUseCache() {
@@ -68,16 +62,14 @@ public class PiGenerator {
 
     public BigDecimal calculate(int k) {
         AtomicReference<BigDecimal> atomicReference = new AtomicReference<>(BigDecimal.ZERO);
-        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
         CountDownLatch countDownLatch = new CountDownLatch(k);
         for (int i = 0; i <= k; i++) {
-            doCalc(i, executorService)
-                    .thenAcceptAsync(b -> atomicReference.updateAndGet(b::add))
-                    .thenRunAsync(countDownLatch::countDown);
+            doCalc(i, Pools.COMPUTE)
+                    .thenAcceptAsync(b -> atomicReference.updateAndGet(b::add), Pools.COMPUTE)
+                    .thenRunAsync(countDownLatch::countDown, Pools.COMPUTE);
         }
 
         await(countDownLatch);
-        executorService.shutdown();
         return BigDecimal.ONE.divide(atomicReference.get().multiply(BigDecimal.valueOf(12)), mathContext);
     }
 
@@ -90,20 +82,21 @@ public class PiGenerator {
         }
     }
 
-    CompletableFuture<BigDecimal> doCalc(int k, ExecutorService executorService) {
+    CompletableFuture<BigDecimal> doCalc(int k, Executor executor) {
+        if (isUseCache()) return doCalcCached(k, executor);
+
         BigInteger kBigInt = BigInteger.valueOf(k);
-        CompletableFuture<BigInteger> numerator = toFjpCf(executorService.submit(() -> (k % 2 == 0 ? BigInteger.ONE : NEGATIVE_ONE)
+        CompletableFuture<BigInteger> numerator = CompletableFuture.supplyAsync(() -> (k % 2 == 0 ? BigInteger.ONE : NEGATIVE_ONE)
                 .multiply(factorial(kBigInt.multiply(SIX)))
-                .multiply(BigInteger.valueOf(545140134L * k + 13591409))
-        ));
+                .multiply(BigInteger.valueOf(545140134L * k + 13591409)), executor);
 
-        CompletableFuture<BigDecimal> m1 = toFjpCf(executorService.submit(() -> BigDecimalMath.pow(new BigDecimal(factorial(kBigInt)),
+        CompletableFuture<BigDecimal> m1 = CompletableFuture.supplyAsync(() -> BigDecimalMath.pow(new BigDecimal(factorial(kBigInt)),
                 new BigDecimal(BigInteger.valueOf(3)),
-                mathContext)));
+                mathContext), executor);
 
-        CompletableFuture<BigDecimal> m2 = toFjpCf(executorService.submit(() -> BigDecimalMath.pow(new BigDecimal(BigInteger.valueOf(640320)),
+        CompletableFuture<BigDecimal> m2 = CompletableFuture.supplyAsync(() -> BigDecimalMath.pow(new BigDecimal(BigInteger.valueOf(640320)),
                 new BigDecimal(3 * k + 3.0 / 2.0),
-                mathContext)));
+                mathContext), executor);
 
         return CompletableFuture.allOf(numerator, m1, m2)
                 .toCompletableFuture()
@@ -118,7 +111,23 @@ public class PiGenerator {
         return
                 new BigDecimal(numerator.join())
                         .divide(d, mathContext);
-                }, executorService);
+                }, executor);
+    }
+
+    /**
+     * same term as {@link #doCalc(int, Executor)}, but with the factorials folded into
+     * {@link FactorialCache#termRatio(long)}, which is derived from the previous term's ratio
+     */
+    CompletableFuture<BigDecimal> doCalcCached(int k, Executor executor) {
+        CompletableFuture<BigInteger> numerator = CompletableFuture.supplyAsync(() -> (k % 2 == 0 ? BigInteger.ONE : NEGATIVE_ONE)
+                .multiply(cache.termRatio(k))
+                .multiply(BigInteger.valueOf(545140134L * k + 13591409)), executor);
+
+        CompletableFuture<BigDecimal> d = CompletableFuture.supplyAsync(() -> BigDecimalMath.pow(new BigDecimal(BigInteger.valueOf(640320)),
+                new BigDecimal(3 * k + 3.0 / 2.0),
+                mathContext), executor);
+
+        return numerator.thenCombineAsync(d, (n, m) -> new BigDecimal(n).divide(m, mathContext), executor);
     }
 
     /**
@@ -129,39 +138,7 @@ public class PiGenerator {
      */
     BigInteger factorial(BigInteger n) {
         if (!isUseCache())
-            return doFactorial(n);
-        return map.computeIfAbsent(n, this::doFactorial);
-    }
-
-    /**
-     * recursive function for computing a factorial.
-     * It calls {@link #factorial(BigInteger)},
-     * which means that the {@link Map} used must be safe to concurrently modify.
-     *
-     * @param n a larger input
-     * @return n multiplied by the previous positive number's {@link #factorial(BigInteger)}
-     */
-    BigInteger doFactorial(BigInteger n) {
-        if (n.equals(BigInteger.ZERO)) {
-            return BigInteger.ONE;
-        } else {
-            return n.multiply(factorial(n.subtract(BigInteger.ONE)));
-        }
-    }
-
-    interface ThrowingCallable<T> {
-        static <T> Supplier<T> supplier(ThrowingCallable<T> tc) {
-            return tc::callUnsafe;
-        }
-
-        T call() throws Throwable;
-
-        default T callUnsafe() {
-            try {
-                return call();
-            } catch (Throwable e) {
-                throw new RuntimeException(e);
-            }
-        }
+            return FactorialCache.product(1, n.longValueExact());
+        return cache.factorial(n.longValueExact());
     }
 }
@@ -0,0 +1,30 @@
+package info.ankin.pisearch.generation;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BbpDigitExtractorTest {
+
+    @Test
+    void test_firstDigits() {
+        assertEquals("243F6A8885A308D313198A2E", new BbpDigitExtractor().hexDigitsAt(0, 24));
+    }
+
+    @Test
+    void test_matchesDigitsFile() throws IOException {
+        BigDecimal pi = new BigDecimal(Files.readString(Paths.get("../digits/pi-digits.txt")));
+        BbpDigitExtractor extractor = new BbpDigitExtractor();
+
+        for (long position : new long[]{1, 100, 1_000, 10_000, 30_000}) {
+            assertEquals(BbpDigitExtractor.hexDigitsOf(pi, position, 20), extractor.hexDigitsAt(position, 20),
+                    "position " + position);
+        }
+    }
+
+}
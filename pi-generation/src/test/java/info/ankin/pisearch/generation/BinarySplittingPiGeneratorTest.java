@@ -0,0 +1,44 @@
+package info.ankin.pisearch.generation;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BinarySplittingPiGeneratorTest {
+
+    @Test
+    void test_twentyDigits() {
+        assertEquals("3.14159265358979323846", new BinarySplittingPiGenerator().calculate(20).toPlainString());
+    }
+
+    @Test
+    void test_truncatesInsteadOfRounding() {
+        // the digit after the 4th place is a 9
+        assertEquals("3.1415", new BinarySplittingPiGenerator().calculate(4).toPlainString());
+    }
+
+    @Test
+    void test_matchesDigitsFile() throws IOException {
+        String expected = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        String actual = new BinarySplittingPiGenerator().calculate(expected.length() - 2).toPlainString();
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void test_parallelMatchesDigitsFile() throws IOException {
+        String expected = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        String actual = new BinarySplittingPiGenerator()
+                .setParallel(true)
+                .setParallelThreshold(8)
+                .calculate(expected.length() - 2)
+                .toPlainString();
+
+        assertEquals(expected, actual);
+    }
+
+}
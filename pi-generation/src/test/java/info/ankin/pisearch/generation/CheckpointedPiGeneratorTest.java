@@ -0,0 +1,60 @@
+package info.ankin.pisearch.generation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointedPiGeneratorTest {
+    private static final int DIGITS = 2000;
+
+    @Test
+    void test_resumesFromDamagedCheckpoints(@TempDir Path directory) throws IOException {
+        BigInteger expected = new BinarySplittingPiGenerator().scaledPi(DIGITS);
+
+        // stop partway, as if the machine went away after a few chunks
+        BinarySplittingPiGenerator stopping = new BinarySplittingPiGenerator() {
+            int chunks;
+
+            @Override
+            PQT sum(long a, long b) {
+                if (++chunks > 7) throw new IllegalStateException("stopped");
+                return super.sum(a, b);
+            }
+        };
+        assertThrows(IllegalStateException.class, () -> new CheckpointedPiGenerator(stopping, directory, 8).scaledPi(DIGITS));
+
+        List<Path> checkpoints = checkpoints(directory);
+        assertTrue(checkpoints.size() >= 3, "checkpoints: " + checkpoints);
+        // cut one short, flip a byte in the middle of another, and empty a third
+        byte[] bytes = Files.readAllBytes(checkpoints.get(0));
+        Files.write(checkpoints.get(0), Arrays.copyOf(bytes, bytes.length / 2));
+        bytes = Files.readAllBytes(checkpoints.get(1));
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(checkpoints.get(1), bytes);
+        Files.write(checkpoints.get(2), new byte[0]);
+
+        assertEquals(expected, new CheckpointedPiGenerator(new BinarySplittingPiGenerator(), directory, 8).scaledPi(DIGITS));
+        // only the root is left, and it is read back as it is
+        assertEquals(1, checkpoints(directory).size());
+        assertEquals(expected, new CheckpointedPiGenerator(new BinarySplittingPiGenerator(), directory, 8).scaledPi(DIGITS));
+    }
+
+    private static List<Path> checkpoints(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".bin")).sorted().collect(Collectors.toList());
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package info.ankin.pisearch.generation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DecimalConverterTest {
+
+    /**
+     * collects what the converter writes, checking that no block is larger than it should be
+     */
+    private static final class CollectingSink implements DigitSink {
+        private final ByteArrayOutputStream digits = new ByteArrayOutputStream();
+        private final int blockSize;
+
+        CollectingSink(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        public void accept(ByteBuffer block) {
+            assertTrue(block.remaining() > 0 && block.remaining() <= blockSize, "block of " + block.remaining());
+            while (block.hasRemaining()) digits.write(block.get());
+        }
+
+        @Override
+        public String toString() {
+            return digits.toString(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static BigInteger scaledPi(String pi, int digits) {
+        return new BigInteger(pi.substring(0, digits + 2).replace(".", ""));
+    }
+
+    @Test
+    void test_writePiAroundLeafBoundaries() throws IOException {
+        String expected = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        int leaf = DecimalConverter.LEAF_DIGITS;
+
+        for (int blockSize : new int[]{1, 7, leaf, 1000, DecimalConverter.DEFAULT_BLOCK_SIZE}) {
+            for (int digits : new int[]{0, 1, leaf - 1, leaf, leaf + 1, 2 * leaf + 1, 4 * leaf + 1, 3 * leaf + 7}) {
+                CollectingSink sink = new CollectingSink(blockSize);
+                new DecimalConverter(sink, blockSize).writePi(scaledPi(expected, digits), digits);
+
+                assertEquals(digits == 0 ? "3" : expected.substring(0, digits + 2), sink.toString(),
+                        digits + " digits in blocks of " + blockSize);
+            }
+        }
+    }
+
+    @Test
+    void test_leadingZerosOfPieces() throws IOException {
+        // the low half of a split starts with zeros, which toString() alone would drop
+        CollectingSink sink = new CollectingSink(64);
+        DecimalConverter converter = new DecimalConverter(sink, 64);
+        converter.write(BigInteger.TEN.pow(DecimalConverter.LEAF_DIGITS + 3).add(BigInteger.ONE), 2 * DecimalConverter.LEAF_DIGITS);
+        converter.flush();
+
+        String digits = sink.toString();
+        assertEquals(2 * DecimalConverter.LEAF_DIGITS, digits.length());
+        assertEquals("1" + "0".repeat(DecimalConverter.LEAF_DIGITS + 2) + "1",
+                digits.substring(DecimalConverter.LEAF_DIGITS - 4));
+        assertEquals("0".repeat(DecimalConverter.LEAF_DIGITS - 4), digits.substring(0, DecimalConverter.LEAF_DIGITS - 4));
+    }
+
+    @Test
+    void test_generatedPiToFile(@TempDir Path directory) throws IOException {
+        String expected = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        int digits = expected.length() - 2;
+        Path file = directory.resolve("pi.txt");
+
+        try (FileDigitSink sink = FileDigitSink.create(file)) {
+            new DecimalConverter(sink, 4093).writePi(new BinarySplittingPiGenerator().scaledPi(digits), digits);
+        }
+
+        assertEquals(expected, Files.readString(file));
+    }
+
+}
@@ -0,0 +1,34 @@
+package info.ankin.pisearch.generation;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FactorialCacheTest {
+
+    @Test
+    void test_termRatioMatchesFactorials() {
+        FactorialCache cache = new FactorialCache();
+        for (int k = 0; k < 50; k++) {
+            BigInteger expected = FactorialCache.product(1, 6 * k)
+                    .divide(FactorialCache.product(1, 3 * k).multiply(FactorialCache.product(1, k).pow(3)));
+            assertEquals(expected, cache.termRatio(k));
+        }
+    }
+
+    @Test
+    void test_staysWithinBound() {
+        FactorialCache cache = new FactorialCache(1 << 12);
+        for (int n = 0; n < 2000; n += 10) cache.factorial(n);
+        // deep factorials would have overflowed the stack with the recursive version
+        assertEquals(FactorialCache.product(1, 100_000), cache.factorial(100_000));
+
+        FactorialCache.Stats stats = cache.getStats();
+        assertTrue(stats.getBytes() <= 1 << 12);
+        assertTrue(stats.getEvictions() > 0);
+    }
+
+}
@@ -69,9 +69,9 @@ public class BoyerMoore {
     /**
      * store the pattern as a character array
      */
-    private char[] pattern;
+    private final char[] pattern;
     /**
-     * or as a string
+     * and as a string, if it was given as one
      */
     private String pat;
 
@@ -83,6 +83,8 @@ public class BoyerMoore {
     public BoyerMoore(String pat) {
         this.R = 256;
         this.pat = pat;
+        // for searching digit sources, without converting it on every search
+        this.pattern = pat.toCharArray();
 
         // position of rightmost occurrence of c in the pattern
         right = new int[R];
@@ -197,6 +199,48 @@ public class BoyerMoore {
         return n;
     }
 
+    /**
+     * Returns the index of the first occurrence of the pattern string
+     * in a digit source, which can be larger than a {@link String} or the heap.
+     *
+     * @param txt the text
+     * @return the index of the first occurrence of the pattern string
+     * in the text; n if no such match
+     */
+    public long search(DigitSource txt) {
+        return search(txt, 0);
+    }
+
+    /**
+     * Returns the index of the first occurrence of the pattern string
+     * in a digit source, starting at an offset, e.g. the one after the previous match.
+     *
+     * @param txt  the text
+     * @param from the offset to start searching at
+     * @return the index of the first occurrence of the pattern string
+     * at or after {@code from}; n if no such match
+     */
+    public long search(DigitSource txt, long from) {
+        int m = pattern.length;
+        long n = txt.length();
+        int skip;
+        for (long i = Math.max(0, from); i <= n - m; i += skip) {
+            skip = 0;
+            for (int j = m - 1; j >= 0; j--) {
+                int c = txt.byteAt(i + j) & 0xFF;
+                if (pattern[j] != c) {
+                    // a byte outside a smaller alphabet cannot be in the pattern either
+                    skip = Math.max(1, j - (c < R ? right[c] : -1));
+                    break;
+                }
+            }
+            // found
+            if (skip == 0) return i;
+        }
+        // not found
+        return n;
+    }
+
     //<editor-fold desc="Initial take of FS Algo">
 
     /**
@@ -272,7 +316,13 @@ public class BoyerMoore {
     //</editor-fold>
     //</editor-fold>
 
-    // tuned bm
+    /**
+     * tuned boyer-moore, after the C version by Charras and Lecroq.
+     * {@code y} must have room for {@code m} more characters after the text, which are overwritten with sentinels.
+     * {@link QGramSearch} is the finished, digit-specific take on the same idea.
+     *
+     * @return offset of the first occurrence of {@code x} in the first {@code n} characters of {@code y}, or null
+     */
     Integer tunedBm(char[] x, int m, char[] y, int n) {
         int j;
         int k;
@@ -285,7 +335,7 @@ public class BoyerMoore {
         bmBc[x[m - 1]] = 0;
 
         // memset(y + n, x[m - 1], m);
-        for (int memset = n; memset < (n + m); memset++) y[memset] = (char) m;
+        for (int memset = n; memset < (n + m); memset++) y[memset] = x[m - 1];
 
         /* Searching */
         j = 0;
@@ -299,7 +349,7 @@ public class BoyerMoore {
                 j += k;
                 k = bmBc[y[j + m - 1]];
             }
-            if (memSame(x, subArray(y, j), m - 1) && j < n)
+            if (j < n && memSame(x, subArray(y, j), m - 1))
                 return j;
             j += shift;                          /* shift */
         }
@@ -308,7 +358,8 @@ public class BoyerMoore {
     }
 
     private void preBmBc(char[] x, int m, int[] bmBc) {
-        throw new UnsupportedOperationException("not yet implemented");
+        Arrays.fill(bmBc, m);
+        for (int i = 0; i < m - 1; i++) bmBc[x[i]] = m - i - 1;
     }
 
     // hide c implementation details like boolean types
@@ -318,7 +369,7 @@ public class BoyerMoore {
 
     private int memcmp(char[] s1, char[] s2, int i) {
         for (int j = 0; j < i; j++) {
-            if (s1[i] != s2[i]) return 1;
+            if (s1[j] != s2[j]) return 1;
         }
 
         return 0;
@@ -0,0 +1,32 @@
+package info.ankin.pisearch.indexing;
+
+/**
+ * a {@link DigitSource} over the start of a byte array, which is read in place
+ */
+class ByteArrayDigitSource implements DigitSource {
+    private final byte[] digits;
+    private final int length;
+
+    ByteArrayDigitSource(byte[] digits, int length) {
+        this.digits = digits;
+        this.length = length;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public byte byteAt(long index) {
+        if (index >= length) throw new IndexOutOfBoundsException("index " + index + " of " + length + " characters");
+        return digits[(int) index];
+    }
+
+    @Override
+    public void read(long index, byte[] dst, int dstOffset, int length) {
+        if (index + length > this.length)
+            throw new IndexOutOfBoundsException("range [" + index + ", " + (index + length) + ") of " + this.length + " characters");
+        System.arraycopy(digits, (int) index, dst, dstOffset, length);
+    }
+}
@@ -1,13 +1,145 @@
 package info.ankin.pisearch.indexing;
 
+import info.ankin.pisearch.format.PackedDigits;
+
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 public class CreateIndex {
     public static void main(String[] args) throws IOException {
-        Path path = Paths.get("digits/pi-digits.txt");
-        System.out.println(Files.readString(path));
+        if (args.length > 0 && "pack".equals(args[0])) {
+            pack(args);
+            return;
+        }
+        if (args.length > 0 && "suffix-array".equals(args[0])) {
+            suffixArray(args);
+            return;
+        }
+        if (args.length > 0 && "hash-index".equals(args[0])) {
+            hashIndex(args);
+            return;
+        }
+        if (args.length > 0 && "extend-index".equals(args[0])) {
+            extendIndex(args);
+            return;
+        }
+        if (args.length > 0 && "first-table".equals(args[0])) {
+            firstTable(args);
+            return;
+        }
+        if (args.length > 0 && "fm-index".equals(args[0])) {
+            fmIndex(args);
+            return;
+        }
+
+        Path path = Paths.get(args.length > 0 ? args[0] : "digits/pi-digits.txt");
+        System.out.println(DigitFiles.readString(path));
+    }
+
+    /**
+     * {@code pack [text-file] [packed-file]}
+     */
+    static void pack(String[] args) throws IOException {
+        Path text = Paths.get(args.length > 1 ? args[1] : "digits/pi-digits.txt");
+        Path packed = Paths.get(args.length > 2 ? args[2] : "digits/pi-digits.bcd");
+        long digits = PackedDigits.pack(text, packed);
+        System.err.println("packed " + digits + " digits from " + text + " into " + packed);
+    }
+
+    /**
+     * {@code suffix-array [digits-file] [index-file]}
+     */
+    static void suffixArray(String[] args) throws IOException {
+        Path digits = Paths.get(args.length > 1 ? args[1] : "digits/pi-digits.txt");
+        Path index = Paths.get(args.length > 2 ? args[2] : "digits/pi-digits.sa");
+        try (DigitSource source = DigitSource.open(digits)) {
+            long start = System.nanoTime();
+            SuffixArrayIndex.build(source).save(index);
+            System.err.printf("suffix array of %d characters from %s written to %s in %.1fs%n",
+                    source.length(), digits, index, (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    /**
+     * {@code hash-index [digits-file] [index-file] [lengths]}, where lengths are comma separated,
+     * to be opened by {@link HashSearch.DatabaseIndexRepository}
+     */
+    static void hashIndex(String[] args) throws IOException {
+        Path digits = Paths.get(args.length > 1 ? args[1] : "digits/pi-digits.txt");
+        Path index = Paths.get(args.length > 2 ? args[2] : "digits/pi-digits.idx");
+        String lengths = args.length > 3 ? args[3] : "4,5,6,7,8";
+        try (DigitSource source = DigitSource.open(digits)) {
+            long start = System.nanoTime();
+            List<WindowIndex> indexes = new ArrayList<>();
+            for (String length : lengths.split(",")) indexes.add(WindowIndex.build(source, Integer.parseInt(length.trim(), 10), true));
+            HashSearch.DatabaseIndexRepository.write(index, source, indexes);
+            System.err.printf("window index of lengths %s over %d characters from %s written to %s in %.1fs%n",
+                    lengths, source.length(), digits, index, (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    /**
+     * {@code extend-index [digits-file] [index-file]}: after more digits were appended to the digits file,
+     * bring a {@code hash-index} file up to date by indexing only the new windows, see {@link WindowIndex#extend(DigitSource)}
+     */
+    static void extendIndex(String[] args) throws IOException {
+        Path digits = Paths.get(args.length > 1 ? args[1] : "digits/pi-digits.txt");
+        Path index = Paths.get(args.length > 2 ? args[2] : "digits/pi-digits.idx");
+        long indexed = HashSearch.DatabaseIndexRepository.textLength(index);
+        try (DigitSource source = DigitSource.open(digits);
+             HashSearch.DatabaseIndexRepository repository = HashSearch.DatabaseIndexRepository.open(index, source.slice(0, indexed))) {
+            long start = System.nanoTime();
+            List<WindowIndex> indexes = new ArrayList<>();
+            for (WindowIndex existing : repository.indexes.values()) indexes.add(existing.extend(source));
+            indexes.sort(Comparator.comparingInt(WindowIndex::getLength));
+            HashSearch.DatabaseIndexRepository.write(index, source, indexes);
+            System.err.printf("window index %s extended from %d to %d characters of %s in %.1fs%n",
+                    index, indexed, source.length(), digits, (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    /**
+     * {@code first-table [digits-file] [table-file] [max-length]}: the first occurrence of every string of digits,
+     * listing those which do not occur if there are only a few
+     */
+    static void firstTable(String[] args) throws IOException {
+        Path digits = Paths.get(args.length > 1 ? args[1] : "digits/pi-digits.txt");
+        Path table = Paths.get(args.length > 2 ? args[2] : "digits/pi-digits.first");
+        int maxLength = args.length > 3 ? Integer.parseInt(args[3], 10) : 6;
+        try (DigitSource source = DigitSource.open(digits)) {
+            long start = System.nanoTime();
+            FirstOccurrenceTable firstOccurrences = FirstOccurrenceTable.build(source, maxLength);
+            firstOccurrences.save(table);
+            System.err.printf("first occurrences of up to %d digits in %s written to %s in %.1fs%n",
+                    maxLength, digits, table, (System.nanoTime() - start) / 1e9);
+            for (int length = 1; length <= maxLength; length++) {
+                long missing = firstOccurrences.missing(length).count();
+                System.out.println(length + " digits: " + missing + " missing");
+                if (missing > 0 && missing <= 20) {
+                    int digitCount = length;
+                    firstOccurrences.missing(length)
+                            .forEach(value -> System.out.println("  " + FirstOccurrenceTable.format(digitCount, value)));
+                }
+            }
+        }
+    }
+
+    /**
+     * {@code fm-index [digits-file] [sample-rate]}: build an FM-index in memory and report its size
+     */
+    static void fmIndex(String[] args) throws IOException {
+        Path digits = Paths.get(args.length > 1 ? args[1] : "digits/pi-digits.txt");
+        int sampleRate = args.length > 2 ? Integer.parseInt(args[2], 10) : FmIndex.DEFAULT_SAMPLE_RATE;
+        try (DigitSource source = DigitSource.open(digits)) {
+            long start = System.nanoTime();
+            FmIndex index = FmIndex.build(source, sampleRate);
+            System.err.printf("FM-index of %d characters from %s built in %.1fs: %d bytes, %.3f bytes per character%n",
+                    source.length(), digits, (System.nanoTime() - start) / 1e9,
+                    index.sizeInBytes(), (double) index.sizeInBytes() / Math.max(1, source.length()));
+        }
     }
 }
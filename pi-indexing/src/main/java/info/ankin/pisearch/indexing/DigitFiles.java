@@ -0,0 +1,32 @@
+package info.ankin.pisearch.indexing;
+
+import info.ankin.pisearch.format.PackedDigitReader;
+import info.ankin.pisearch.format.PackedDigits;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * reads digit files in either of the formats the project produces:
+ * plain text ({@code digits/pi-digits.txt}), or packed one digit per nibble ({@link PackedDigits})
+ */
+public final class DigitFiles {
+    private DigitFiles() {
+    }
+
+    /**
+     * @param path a text or packed digit file
+     * @return the digits; for a packed file, these do not include a decimal point
+     */
+    public static String readString(Path path) throws IOException {
+        if (!PackedDigits.isPacked(path)) return Files.readString(path, StandardCharsets.UTF_8);
+
+        try (PackedDigitReader reader = PackedDigitReader.open(path)) {
+            byte[] digits = new byte[Math.toIntExact(reader.length())];
+            reader.readAscii(0, digits, 0, digits.length);
+            return new String(digits, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package info.ankin.pisearch.indexing;
+
+import info.ankin.pisearch.format.PackedDigitReader;
+import info.ankin.pisearch.format.PackedDigits;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * A sequence of (ASCII) digits which can be searched, addressed by {@code long} offsets
+ * so that it is not limited by the size of a {@link String} or of the heap.
+ * <p>
+ * Implementations are read-only and safe to share between threads.
+ */
+public interface DigitSource extends Closeable {
+    /**
+     * @param text the digits, which must only contain ASCII characters
+     * @return a source backed by the string itself
+     */
+    static DigitSource of(String text) {
+        return new StringDigitSource(text);
+    }
+
+    /**
+     * @param digits ASCII characters, which are read in place
+     * @param length how many of them the source has, from the start; they must not change afterwards,
+     *               but the rest of the array may, e.g. as a text is filled in
+     * @return a source backed by the array itself
+     */
+    static DigitSource of(byte[] digits, int length) {
+        if (length < 0 || length > digits.length)
+            throw new IndexOutOfBoundsException("length " + length + " of an array of " + digits.length);
+        return new ByteArrayDigitSource(digits, length);
+    }
+
+    /**
+     * open a text or packed ({@link PackedDigits}) digit file, memory-mapped rather than read onto the heap
+     */
+    static DigitSource open(Path path) throws IOException {
+        if (PackedDigits.isPacked(path)) return new PackedDigitSource(PackedDigitReader.open(path));
+        return MappedDigitSource.open(path);
+    }
+
+    /**
+     * @return number of characters
+     */
+    long length();
+
+    /**
+     * @param index offset, from zero
+     * @return the ASCII character at {@code index}
+     */
+    byte byteAt(long index);
+
+    /**
+     * copy a range of characters
+     *
+     * @param index     offset of the first character
+     * @param dst       where to put the characters
+     * @param dstOffset offset in {@code dst}
+     * @param length    number of characters
+     */
+    default void read(long index, byte[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) dst[dstOffset + i] = byteAt(index + i);
+    }
+
+    /**
+     * @return the characters in {@code [from, to)}, clamped to the bounds of the source
+     */
+    default String substring(long from, long to) {
+        from = Math.max(0, from);
+        to = Math.min(length(), to);
+        if (from >= to) return "";
+        byte[] bytes = new byte[Math.toIntExact(to - from)];
+        read(from, bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return whether the characters at {@code index} are the same as {@code pattern}
+     */
+    default boolean regionMatches(long index, byte[] pattern) {
+        if (index < 0 || index + pattern.length > length()) return false;
+        for (int i = 0; i < pattern.length; i++) {
+            if (byteAt(index + i) != pattern[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return a view of the characters in {@code [from, to)}, offset to start at zero; closing it leaves this source open
+     */
+    default DigitSource slice(long from, long to) {
+        if (from < 0 || to > length() || from > to)
+            throw new IndexOutOfBoundsException("slice [" + from + ", " + to + ") of " + length() + " characters");
+        return new SliceDigitSource(this, from, to - from);
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
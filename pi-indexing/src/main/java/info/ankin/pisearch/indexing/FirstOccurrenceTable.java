@@ -0,0 +1,209 @@
+package info.ankin.pisearch.indexing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The first offset of every string of up to {@link #getMaxLength()} digits, in a dense table per length
+ * indexed by the string's numeric value, so that looking up a short pattern is a single array read.
+ * <p>
+ * All lengths are filled in one pass over the text, keeping the value of the last {@code maxLength} digits;
+ * the scan stops early once every table is full. The table of length {@code k} has {@code 10^k} ints,
+ * so up to length 8 the tables take about 444MB; strings which do not occur have -1.
+ * <p>
+ * {@link #save(Path)} writes the tables to a file, which {@link #open(Path)} maps instead of reading:
+ * <pre>
+ *  offset  size        content
+ *  0       4           magic, "PIFO"
+ *  4       4           format version
+ *  8       8           n, length of the text
+ *  16      4           maximum length
+ *  20      4           reserved
+ *  24      4*10^k ...  the table of each length k, from 1, little-endian ints
+ * </pre>
+ */
+public class FirstOccurrenceTable {
+    /**
+     * the longest strings which fit a table, as {@code 10^9} ints is about the largest array there can be
+     */
+    public static final int MAX_LENGTH = 9;
+    private static final int MAGIC = 0x5049464F; // PIFO
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    private final long textLength;
+    /**
+     * the table of each length, at index {@code length - 1}
+     */
+    private final IntArray[] tables;
+
+    private FirstOccurrenceTable(long textLength, IntArray[] tables) {
+        this.textLength = textLength;
+        this.tables = tables;
+    }
+
+    /**
+     * @param source    the text, less than {@link Integer#MAX_VALUE} characters
+     * @param maxLength the longest strings to tabulate, from 1 to {@link #MAX_LENGTH}
+     */
+    public static FirstOccurrenceTable build(DigitSource source, int maxLength) {
+        long n = source.length();
+        if (n > Integer.MAX_VALUE)
+            throw new UnsupportedOperationException("first occurrence table holds int offsets, text has " + n + " characters");
+        if (maxLength < 1 || maxLength > MAX_LENGTH)
+            throw new IllegalArgumentException("maximum length must be between 1 and " + MAX_LENGTH + ": " + maxLength);
+
+        int[][] tables = new int[maxLength][];
+        int[] powers = new int[maxLength + 1];
+        int[] remaining = new int[maxLength];
+        powers[0] = 1;
+        for (int k = 1; k <= maxLength; k++) {
+            powers[k] = powers[k - 1] * 10;
+            tables[k - 1] = new int[powers[k]];
+            Arrays.fill(tables[k - 1], -1);
+            remaining[k - 1] = powers[k];
+        }
+        int unfilled = maxLength;
+
+        byte[] buffer = new byte[(int) Math.min(QGramSearch.BLOCK_SIZE, n)];
+        // the value of the last maxLength digits, and how many digits there have been since a non-digit
+        int value = 0;
+        int run = 0;
+        scan:
+        for (long start = 0; start < n; start += buffer.length) {
+            int length = (int) Math.min(buffer.length, n - start);
+            source.read(start, buffer, 0, length);
+            for (int i = 0; i < length; i++) {
+                int digit = buffer[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    run = 0;
+                    continue;
+                }
+                value = (int) (((long) value * 10 + digit) % powers[maxLength]);
+                if (run < maxLength) run++;
+                for (int k = 1; k <= run; k++) {
+                    if (remaining[k - 1] == 0) continue;
+                    int[] table = tables[k - 1];
+                    int suffix = value % powers[k];
+                    if (table[suffix] >= 0) continue;
+                    table[suffix] = (int) (start + i - k + 1);
+                    if (--remaining[k - 1] == 0 && --unfilled == 0) break scan;
+                }
+            }
+        }
+
+        IntArray[] arrays = new IntArray[maxLength];
+        for (int k = 0; k < maxLength; k++) arrays[k] = IntArray.of(tables[k]);
+        return new FirstOccurrenceTable(n, arrays);
+    }
+
+    /**
+     * map a table file written by {@link #save(Path)}; opening takes about as long as reading the header
+     */
+    public static FirstOccurrenceTable open(Path path) throws IOException {
+        // the mappings stay valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC)
+                throw new IOException("not a first occurrence table: " + path);
+            if (header.getInt(4) != VERSION)
+                throw new IOException("unsupported first occurrence table version: " + header.getInt(4));
+            long textLength = header.getLong(8);
+            int maxLength = header.getInt(16);
+            if (maxLength < 1 || maxLength > MAX_LENGTH) throw new IOException("corrupt first occurrence table: " + path);
+
+            IntArray[] tables = new IntArray[maxLength];
+            long position = HEADER_SIZE;
+            for (int k = 1, size = 10; k <= maxLength; k++, size *= 10) {
+                tables[k - 1] = IntArray.map(channel, position, size);
+                position += 4L * size;
+            }
+            return new FirstOccurrenceTable(textLength, tables);
+        }
+    }
+
+    public void save(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(textLength).putInt(tables.length).putInt(0);
+            for (IntArray table : tables) {
+                for (int i = 0; i < table.length(); i++) {
+                    if (!buffer.hasRemaining()) write(channel, buffer);
+                    buffer.putInt(table.get(i));
+                }
+            }
+            write(channel, buffer);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    public int getMaxLength() {
+        return tables.length;
+    }
+
+    /**
+     * @return length of the text the table was built from
+     */
+    public long getTextLength() {
+        return textLength;
+    }
+
+    /**
+     * @return whether {@code pattern} can be looked up, i.e. is a non-empty string of at most {@link #getMaxLength()} digits
+     */
+    public boolean covers(String pattern) {
+        if (pattern.isEmpty() || pattern.length() > tables.length) return false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param pattern a string which the table {@link #covers(String) covers}
+     * @return the smallest offset at which {@code pattern} occurs, or -1
+     */
+    public int first(String pattern) {
+        if (!covers(pattern)) throw new IllegalArgumentException("not a string of 1 to " + tables.length + " digits: " + pattern);
+        return first(pattern.length(), Integer.parseInt(pattern, 10));
+    }
+
+    /**
+     * @param length number of digits, including leading zeros
+     * @param value  the digits as a number
+     * @return the smallest offset at which the digits occur, or -1
+     */
+    public int first(int length, int value) {
+        return tables[length - 1].get(value);
+    }
+
+    /**
+     * @return the values of the strings of {@code length} digits which do not occur in the text, in ascending order
+     */
+    public IntStream missing(int length) {
+        IntArray table = tables[length - 1];
+        return IntStream.range(0, table.length()).filter(value -> table.get(value) < 0);
+    }
+
+    /**
+     * @return {@code value} with leading zeros up to {@code length} digits
+     */
+    public static String format(int length, int value) {
+        String digits = Integer.toString(value);
+        return "0".repeat(length - digits.length()) + digits;
+    }
+}
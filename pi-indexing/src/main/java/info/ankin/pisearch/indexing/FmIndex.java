@@ -0,0 +1,228 @@
+package info.ankin.pisearch.indexing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * FM-index: a compressed self-index over a {@link DigitSource}, which no longer needs the text to answer queries.
+ * <p>
+ * The index keeps the Burrows-Wheeler transform of the text in a {@link WaveletTree}, at about 3.4 bits per digit.
+ * Counting the occurrences of a pattern is a backward search: one pair of rank queries per pattern character.
+ * Locating them uses a sample of the suffix array, at every {@link #getSampleRate()}-th text position,
+ * found from any other row within that many steps of the LF mapping;
+ * a {@link SparseBitVector} marks which rows are sampled.
+ * The smallest offset in each block of {@link #FIRST_BLOCK} rows is kept too, so that {@link #first(String)}
+ * takes the whole blocks of a range from those and locates rows only in the blocks at its ends which may do better.
+ * <p>
+ * With the default rate of 64, the index takes about 0.6 bytes per digit, see {@link #sizeInBytes()}:
+ * 0.47 for the tree, whose Huffman codes and rank counts are within a few percent of the entropy of the digits,
+ * 0.0625 for the samples, and about 0.03 each for the marks and the block minimums.
+ * A rate of 256 brings it to about 0.52, at four times the cost of locating each occurrence.
+ *
+ * @see <a href="https://doi.org/10.1109/SFCS.2000.892127">Ferragina and Manzini, Opportunistic Data Structures with Applications</a>
+ */
+public class FmIndex implements PatternIndex {
+    public static final int DEFAULT_SAMPLE_RATE = 64;
+    static final int FIRST_BLOCK = 128;
+
+    private final int length;
+    /**
+     * the symbol of each byte value, from 1, or 0 if the byte does not occur in the text
+     */
+    private final int[] symbols;
+    /**
+     * number of text characters (sentinel included) smaller than each symbol
+     */
+    private final int[] counts;
+    private final WaveletTree bwt;
+    private final SparseBitVector sampled;
+    private final int[] samples;
+    private final int sampleRate;
+    /**
+     * the smallest text offset in each block of {@link #FIRST_BLOCK} rows
+     */
+    private final int[] blockFirsts;
+    private final RangeMin firstInBlocks;
+
+    private FmIndex(int length, int[] symbols, int[] counts, WaveletTree bwt, SparseBitVector sampled, int[] samples, int sampleRate,
+                    int[] blockFirsts) {
+        this.length = length;
+        this.symbols = symbols;
+        this.counts = counts;
+        this.bwt = bwt;
+        this.sampled = sampled;
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+        this.blockFirsts = blockFirsts;
+        this.firstInBlocks = new RangeMin(blockFirsts);
+    }
+
+    public static FmIndex build(DigitSource source) {
+        return build(source, DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * builds on the calling thread, as the suffix array it starts from does, see {@link SuffixArrayIndex#build(DigitSource)}
+     *
+     * @param source     the text, less than {@link Integer#MAX_VALUE} characters; not needed after building
+     * @param sampleRate every how many text positions the suffix array is sampled: larger is smaller but slower to locate
+     */
+    public static FmIndex build(DigitSource source, int sampleRate) {
+        if (source.length() >= Integer.MAX_VALUE)
+            throw new UnsupportedOperationException("FM-index holds int offsets, text has " + source.length() + " characters");
+        if (sampleRate < 1) throw new IllegalArgumentException("sample rate must be positive: " + sampleRate);
+        int n = (int) source.length();
+        byte[] text = new byte[n];
+        source.read(0, text, 0, n);
+
+        int[] symbols = new int[256];
+        for (byte b : text) symbols[b & 0xFF] = 1;
+        int alphabet = 1;
+        for (int c = 0; c < symbols.length; c++) if (symbols[c] != 0) symbols[c] = alphabet++;
+
+        // suffix array of the text and its sentinel, which is the smallest suffix
+        int[] suffixes = new int[n + 1];
+        if (n > 0) SaIs.sais(new SaIs.ByteText(text, symbols), suffixes, n + 1, alphabet - 1);
+
+        int[] bwt = new int[n + 1];
+        int[] sampledRows = new int[n / sampleRate + 1];
+        int[] samples = new int[n / sampleRate + 1];
+        int[] blockFirsts = new int[n / FIRST_BLOCK + 1];
+        Arrays.fill(blockFirsts, Integer.MAX_VALUE);
+        for (int row = 0, sample = 0; row <= n; row++) {
+            int offset = suffixes[row];
+            bwt[row] = offset == 0 ? 0 : symbols[text[offset - 1] & 0xFF];
+            if (offset % sampleRate == 0) {
+                sampledRows[sample] = row;
+                samples[sample++] = offset;
+            }
+            blockFirsts[row / FIRST_BLOCK] = Math.min(blockFirsts[row / FIRST_BLOCK], offset);
+        }
+        // text and suffix array can go before the tree is built
+        suffixes = null;
+        text = null;
+
+        int[] counts = new int[alphabet + 1];
+        for (int symbol : bwt) counts[symbol + 1]++;
+        for (int c = 1; c < counts.length; c++) counts[c] += counts[c - 1];
+
+        return new FmIndex(n, symbols, counts, new WaveletTree(bwt, Math.max(2, alphabet)),
+                new SparseBitVector(sampledRows, samples.length, n + 1), samples, sampleRate, blockFirsts);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return length of the indexed text
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return approximate heap footprint of the index
+     */
+    public long sizeInBytes() {
+        return bwt.sizeInBytes() + sampled.sizeInBytes() + 4L * samples.length + firstInBlocks.sizeInBytes()
+                + 4L * (symbols.length + counts.length);
+    }
+
+    @Override
+    public long count(String pattern) {
+        int[] range = range(pattern);
+        return range[1] - range[0];
+    }
+
+    /**
+     * the whole blocks of rows answer from their minimums; of the rows in the partial blocks at either end,
+     * at most {@code 2 * (FIRST_BLOCK - 1)}, only those of a block whose minimum is smaller than that are located
+     */
+    @Override
+    public long first(String pattern) {
+        int[] range = range(pattern);
+        int from = range[0];
+        int to = range[1];
+        if (from >= to) return -1;
+        int firstBlock = (from + FIRST_BLOCK - 1) / FIRST_BLOCK;
+        int lastBlock = to / FIRST_BLOCK;
+        int[] rank = new int[1];
+        if (firstBlock >= lastBlock) return locateFirst(from, to, Integer.MAX_VALUE, rank);
+
+        int first = firstInBlocks.min(firstBlock, lastBlock);
+        if (from < firstBlock * FIRST_BLOCK && blockFirsts[firstBlock - 1] < first)
+            first = locateFirst(from, firstBlock * FIRST_BLOCK, first, rank);
+        if (lastBlock * FIRST_BLOCK < to && blockFirsts[lastBlock] < first)
+            first = locateFirst(lastBlock * FIRST_BLOCK, to, first, rank);
+        return first;
+    }
+
+    /**
+     * @return the smallest of {@code first} and the text offsets of the rows {@code [from, to)}
+     */
+    private int locateFirst(int from, int to, int first, int[] rank) {
+        for (int row = from; row < to; row++) first = Math.min(first, (int) locate(row, rank));
+        return first;
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong occurrences(String pattern) {
+        int[] range = range(pattern);
+        int[] rank = new int[1];
+        return new PrimitiveIterator.OfLong() {
+            int next = range[0];
+
+            @Override
+            public boolean hasNext() {
+                return next < range[1];
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return locate(next++, rank);
+            }
+        };
+    }
+
+    /**
+     * @return {@code [from, to)}, the rows of the sorted rotations which start with {@code pattern}
+     */
+    int[] range(String pattern) {
+        byte[] p = pattern.getBytes(StandardCharsets.US_ASCII);
+        int from = 0;
+        int to = length + 1;
+        for (int i = p.length - 1; i >= 0 && from < to; i--) {
+            int symbol = symbols[p[i] & 0xFF];
+            if (symbol == 0) return new int[]{0, 0};
+            from = counts[symbol] + bwt.rank(symbol, from);
+            to = counts[symbol] + bwt.rank(symbol, to);
+        }
+        return from < to ? new int[]{from, to} : new int[]{0, 0};
+    }
+
+    /**
+     * @param row  a row of the sorted rotations, i.e. an index into the suffix array
+     * @param rank scratch space for {@link WaveletTree#accessAndRank(int, int[])}
+     * @return the text offset of that row
+     */
+    private long locate(int row, int[] rank) {
+        int steps = 0;
+        int sample;
+        while ((sample = sampled.rankIfSet(row)) < 0) {
+            // LF mapping: the row of the rotation which starts one character earlier
+            int symbol = bwt.accessAndRank(row, rank);
+            row = counts[symbol] + rank[0];
+            steps++;
+        }
+        return samples[sample] + steps;
+    }
+
+    @Override
+    public String toString() {
+        return "FmIndex{length=" + length + ", sampleRate=" + sampleRate + ", bytes=" + sizeInBytes() + "}";
+    }
+}
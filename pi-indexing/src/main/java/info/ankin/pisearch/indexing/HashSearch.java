@@ -1,10 +1,24 @@
 package info.ankin.pisearch.indexing;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.*;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
 
 /**
  * potentially, if this suffices, then maybe complicated algorithms are not necessary
@@ -16,21 +30,21 @@ public class HashSearch {
     }
 
     public static void piDemo() throws IOException {
-        Searcher searcher = new Searcher(Files.readString(Paths.get("digits/pi-digits.txt"), StandardCharsets.UTF_8));
-        searcher.initHashesForLength(4);
-        String search = "1237";
-        int result = searcher.search(search);
-        System.out.println(result);
+        Path index = Paths.get("digits/pi-digits.idx");
+        try (DigitSource digits = DigitSource.open(Paths.get("digits/pi-digits.txt"));
+             IndexRepository repository = Files.exists(index)
+                     ? DatabaseIndexRepository.open(index, digits)
+                     : new InMemoryIndexRepository()) {
+            Searcher searcher = new Searcher(digits, repository);
+            if (!repository.isLengthIndexed(4)) searcher.initHashesForLength(4);
+            String search = "1237";
+            int result = searcher.search(search);
+            System.out.println(result);
 
-        String t = searcher.getText();
-        String around = t.substring(result - 10, result) +
-                " " +
-                search +
-                " " +
-                t.substring(result + search.length(),
-                        result + search.length() + 10);
+            String around = searcher.context(result, search.length(), 10);
 
-        System.out.println("match for " + search + " around: " + around);
+            System.out.println("match for " + search + " around: " + around);
+        }
     }
 
     @SuppressWarnings("unused")
@@ -44,74 +58,363 @@ public class HashSearch {
         System.out.println(result);
     }
 
-    public static abstract class IndexRepository {
-        public abstract List<Integer> matchPositions(int hashCode, int length);
+    /**
+     * the {@link WindowIndex} of each window length which has been indexed
+     */
+    public static abstract class IndexRepository implements Closeable {
+        private final AtomicLong version = new AtomicLong();
 
-        // consider passing reference type not multiple primitives
-        public abstract void addHash(int hashCode, int length, int position);
+        /**
+         * @return the index of windows of {@code length}, or null if that length is not indexed
+         */
+        public abstract WindowIndex getIndex(int length);
 
-        public abstract boolean isLengthIndexed(int length);
+        public abstract void addIndex(WindowIndex index);
 
-        public abstract void clearHashes();
-    }
+        public boolean isLengthIndexed(int length) {
+            return getIndex(length) != null;
+        }
 
-    public static class InMemoryIndexRepository extends IndexRepository {
-        // consider if key-ing map by hash is sufficient
-        final Map<Integer, List<Integer>> hashes = new HashMap<>();
-        final Set<Integer> lengths = new HashSet<>();
+        public abstract void clearIndexes();
+
+        /**
+         * @return a number which changes whenever an index is cleared or replaced, so that results derived from
+         * the indexes can tell they may be out of date; adding a length which was missing does not change it
+         */
+        public long getVersion() {
+            return version.get();
+        }
+
+        /**
+         * for implementations, once an index has been cleared or replaced
+         */
+        protected void indexesChanged() {
+            version.incrementAndGet();
+        }
 
         @Override
-        public List<Integer> matchPositions(int hashCode, int length) {
-            return hashes.get(hashCode);
+        public void close() throws IOException {
         }
+    }
+
+    /**
+     * safe for concurrent use, like the {@link WindowIndex indexes} it holds, which never change once built
+     */
+    public static class InMemoryIndexRepository extends IndexRepository {
+        final Map<Integer, WindowIndex> indexes = new ConcurrentHashMap<>();
 
         @Override
-        public void addHash(int hashCode, int length, int position) {
-            hashes.computeIfAbsent(hashCode, k -> new ArrayList<>()).add(position);
-            // todo optimize
-            lengths.add(length);
+        public WindowIndex getIndex(int length) {
+            return indexes.get(length);
         }
 
         @Override
-        public boolean isLengthIndexed(int length) {
-            return lengths.contains(length);
+        public void addIndex(WindowIndex index) {
+            if (indexes.put(index.getLength(), index) != null) indexesChanged();
         }
 
         @Override
-        public void clearHashes() {
-            hashes.clear();
-            lengths.clear();
+        public void clearIndexes() {
+            indexes.clear();
+            indexesChanged();
         }
     }
 
-    @SuppressWarnings("unused") // todo
-    public static abstract class DatabaseIndexRepository extends IndexRepository {
+    /**
+     * An {@link IndexRepository} over an immutable index file, which is memory-mapped rather than read,
+     * so that opening it takes milliseconds however large it is.
+     * Lengths missing from the file can still be {@link #addIndex(WindowIndex) added}, but only in memory.
+     * <p>
+     * The file holds the {@link WindowIndex} of each length, written by {@link #write(Path, DigitSource, Collection)}:
+     * <pre>
+     *  offset  size  content
+     *  0       4     magic, "PIWX"
+     *  4       4     format version
+     *  8       8     n, length of the text
+     *  16      4     k, number of window lengths
+     *  20      4     reserved
+     *  24      24k   directory, for each length:
+     *                window length, bucket bits, number of windows, reserved (ints), position of its postings (long)
+     *  ...           postings, for each length: bucket offsets, then window positions, little-endian ints
+     * </pre>
+     */
+    public static class DatabaseIndexRepository extends InMemoryIndexRepository {
+        private static final int MAGIC = 0x50495758; // PIWX
+        private static final int VERSION = 1;
+        private static final int HEADER_SIZE = 24;
+        private static final int ENTRY_SIZE = 24;
+
+        private final FileChannel channel;
+
+        private DatabaseIndexRepository(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @param path   the index file
+         * @param source the text the index was built from, which is read to verify candidates
+         */
+        public static DatabaseIndexRepository open(Path path, DigitSource source) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC)
+                    throw new IOException("not a window index: " + path);
+                if (header.getInt(4) != VERSION) throw new IOException("unsupported window index version: " + header.getInt(4));
+                long n = header.getLong(8);
+                if (n != source.length())
+                    throw new IOException("index is for a text of " + n + " characters, source has " + source.length());
+
+                int count = header.getInt(16);
+                ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) ENTRY_SIZE * count)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                DatabaseIndexRepository repository = new DatabaseIndexRepository(channel);
+                for (int i = 0; i < count; i++) {
+                    int entry = i * ENTRY_SIZE;
+                    int length = directory.getInt(entry);
+                    int bucketBits = directory.getInt(entry + 4);
+                    int windows = directory.getInt(entry + 8);
+                    long position = directory.getLong(entry + 16);
+                    int buckets = (1 << bucketBits) + 1;
+                    repository.addIndex(new WindowIndex(source, length, bucketBits,
+                            IntArray.map(channel, position, buckets),
+                            IntArray.map(channel, position + 4L * buckets, windows)));
+                }
+                return repository;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the length of the text an index file was built from, e.g. to open it over the start of a text which has grown
+         */
+        public static long textLength(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                while (header.hasRemaining() && channel.read(header) >= 0) {
+                }
+                if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC) throw new IOException("not a window index: " + path);
+                return header.getLong(8);
+            }
+        }
+
+        /**
+         * write a new index file, to a temporary file first and then moved into place,
+         * so that a reader never sees a partial file
+         */
+        public static void write(Path path, DigitSource source, Collection<WindowIndex> indexes) throws IOException {
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putLong(source.length()).putInt(indexes.size()).putInt(0);
+
+                long position = HEADER_SIZE + (long) ENTRY_SIZE * indexes.size();
+                for (WindowIndex index : indexes) {
+                    if (!buffer.hasRemaining()) write(channel, buffer);
+                    buffer.putInt(index.getLength()).putInt(index.getBucketBits())
+                            .putInt(index.getPositions().length()).putInt(0).putLong(position);
+                    position += 4L * (index.getOffsets().length() + index.getPositions().length());
+                }
+                for (WindowIndex index : indexes) {
+                    for (IntArray array : Arrays.asList(index.getOffsets(), index.getPositions())) {
+                        for (int i = 0; i < array.length(); i++) {
+                            if (!buffer.hasRemaining()) write(channel, buffer);
+                            buffer.putInt(array.get(i));
+                        }
+                    }
+                }
+                write(channel, buffer);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
     }
 
+    /**
+     * Searches a text through the index of the pattern's length, building the index on first use.
+     * <p>
+     * Safe for concurrent use, as long as its repository is: queries only read immutable indexes, without locking,
+     * and each missing length is built exactly once, by the first query to need it,
+     * while the other queries for that length wait for it rather than build their own.
+     */
     public static class Searcher {
-        final IndexRepository indexRepository = new InMemoryIndexRepository();
-        final String text;
+        final IndexRepository indexRepository;
+        final DigitSource source;
+        /**
+         * builds in progress, so that each length is built once
+         */
+        private final ConcurrentMap<Integer, CompletableFuture<WindowIndex>> builds = new ConcurrentHashMap<>();
+        /**
+         * answers short digit patterns without an index, if set
+         */
+        private volatile FirstOccurrenceTable firstOccurrences;
 
         public Searcher(String text) {
-            this.text = text;
+            this(DigitSource.of(text));
+        }
+
+        /**
+         * @param source the text to search; it is read in place, not copied
+         */
+        public Searcher(DigitSource source) {
+            this(source, new InMemoryIndexRepository());
+        }
+
+        /**
+         * @param source          the text to search
+         * @param indexRepository indexes of {@code source}, e.g. a {@link DatabaseIndexRepository} to start without building any
+         */
+        public Searcher(DigitSource source, IndexRepository indexRepository) {
+            this.source = source;
+            this.indexRepository = indexRepository;
+        }
+
+        public DigitSource getSource() {
+            return source;
+        }
+
+        /**
+         * @param firstOccurrences built from the same text, to look up short patterns in instead of building indexes
+         */
+        public Searcher setFirstOccurrenceTable(FirstOccurrenceTable firstOccurrences) {
+            if (firstOccurrences != null && firstOccurrences.getTextLength() != source.length())
+                throw new IllegalArgumentException("table is for a text of " + firstOccurrences.getTextLength()
+                        + " characters, source has " + source.length());
+            this.firstOccurrences = firstOccurrences;
+            return this;
+        }
+
+        public FirstOccurrenceTable getFirstOccurrenceTable() {
+            return firstOccurrences;
         }
 
+        /**
+         * @return the {@link IndexRepository#getVersion() version} of the indexes, for caches of results
+         */
+        public long getVersion() {
+            return indexRepository.getVersion();
+        }
+
+        /**
+         * @return whether patterns of {@code length} can be searched and counted without building an index first
+         */
+        public boolean isLengthIndexed(int length) {
+            return indexRepository.isLengthIndexed(length);
+        }
+
+        /**
+         * @return the whole text, which is copied onto the heap unless the searcher was created from a {@link String}
+         */
         public String getText() {
-            return text;
+            return source.substring(0, source.length());
+        }
+
+        /**
+         * the match at {@code position}, with up to {@code radius} characters on either side, separated by spaces
+         *
+         * @param position start of the match
+         * @param length   length of the match
+         * @param radius   how many characters to include before and after
+         * @return e.g. {@code "1415926535 8979 3238462643"}
+         */
+        public String context(long position, int length, int radius) {
+            return source.substring(position - radius, position) +
+                    " " +
+                    source.substring(position, position + length) +
+                    " " +
+                    source.substring(position + length, position + length + radius);
         }
 
+        /**
+         * build the index of {@code length}, unless it is already there or being built
+         */
         @SuppressWarnings("UnusedReturnValue")
         public Searcher initHashesForLength(int length) {
-            for (int i = 0; i < text.length() - length + 1; i++) {
-                String substring = text.substring(i, i + length);
-                indexRepository.addHash(substring.hashCode(), length, i);
-            }
+            if (length < 1 || length > source.length()) return this;
+            indexFor(length);
             return this;
         }
 
+        /**
+         * @return the first offset of {@code search}, or -1 if it does not occur
+         */
         public int search(String search) {
-            if (!indexRepository.isLengthIndexed(search.length())) initHashesForLength(search.length());
-            return indexRepository.matchPositions(search.hashCode(), search.length()).get(0);
+            if (search.isEmpty() || search.length() > source.length()) return -1;
+            FirstOccurrenceTable firstOccurrences = this.firstOccurrences;
+            if (firstOccurrences != null && firstOccurrences.covers(search)) return firstOccurrences.first(search);
+            return indexFor(search.length()).first(search);
+        }
+
+        /**
+         * @return number of (possibly overlapping) occurrences of {@code search}
+         */
+        public long count(String search) {
+            if (search.isEmpty() || search.length() > source.length()) return 0;
+            return indexFor(search.length()).count(search);
+        }
+
+        /**
+         * every occurrence, found as the iterator advances, so even a pattern with millions of occurrences
+         * costs no more memory than one
+         *
+         * @return the offsets of {@code search}, in ascending order
+         */
+        public PrimitiveIterator.OfLong findAll(String search) {
+            if (search.isEmpty() || search.length() > source.length()) return LongStream.empty().iterator();
+            return indexFor(search.length()).occurrences(search, 0);
+        }
+
+        /**
+         * for paging through occurrences, passing the last one seen
+         *
+         * @param offset where the previous occurrence starts, or -1 to start at the beginning
+         * @return the first offset of {@code search} after {@code offset}, or -1 if there is none
+         */
+        public long findAfter(String search, long offset) {
+            if (search.isEmpty() || search.length() > source.length()) return -1;
+            return indexFor(search.length()).firstAfter(search, offset);
+        }
+
+        private WindowIndex indexFor(int length) {
+            WindowIndex index = indexRepository.getIndex(length);
+            if (index != null) return index;
+
+            CompletableFuture<WindowIndex> created = new CompletableFuture<>();
+            CompletableFuture<WindowIndex> build = builds.putIfAbsent(length, created);
+            if (build != null) return build.join();
+
+            // this thread won the race, so it builds on behalf of everyone waiting
+            try {
+                // unless a build which finished since the lookup above has already published it
+                index = indexRepository.getIndex(length);
+                if (index == null) {
+                    index = WindowIndex.build(source, length, true);
+                    indexRepository.addIndex(index);
+                }
+            } catch (RuntimeException | Error e) {
+                // let a later query try again
+                builds.remove(length, created);
+                created.completeExceptionally(e);
+                throw e;
+            }
+            // the repository answers from now on, and once it is cleared the next query builds afresh
+            builds.remove(length, created);
+            created.complete(index);
+            return index;
         }
     }
 }
@@ -0,0 +1,325 @@
+package info.ankin.pisearch.indexing;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Window indexes of several lengths over a text which only grows at the end, such as the digits of pi
+ * as more of them are generated, kept up to date without building them again, in the manner of a log-structured merge tree.
+ * <p>
+ * {@link #append(DigitSource) Appending} indexes only the new windows, by reading the new characters and the
+ * {@code length - 1} before them, into a small segment per length, which is searched after the base index.
+ * Segments are merged in the background: into one another once there are {@link #MAX_SEGMENTS} of them,
+ * and into the base once they hold {@link #BASE_MERGE_RATIO one eighth} as many windows as it.
+ * Merging is {@link WindowIndex#extend(DigitSource)}, which copies the older postings bucket by bucket
+ * and only reads the text of the newer ones.
+ * <p>
+ * Queries read an immutable snapshot of the text and its segments, which appending and merging replace atomically,
+ * so they never wait for either, and see either all or none of an append.
+ * Appends are serialized, and merges happen one at a time on a thread of their own.
+ * As the base is a {@link WindowIndex}, the text is limited to {@link Integer#MAX_VALUE} characters.
+ */
+public class IncrementalIndex implements Closeable {
+    /**
+     * number of segments of a length at which they are merged into one
+     */
+    public static final int MAX_SEGMENTS = 8;
+    /**
+     * the segments are merged into the base once they have at least the base's windows divided by this,
+     * so that each window is copied a bounded number of times however small the appends are
+     */
+    public static final int BASE_MERGE_RATIO = 8;
+
+    private volatile Snapshot snapshot;
+    private final ExecutorService merges = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "incremental-index-merge");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+    private final Object mergeLock = new Object();
+
+    /**
+     * @param source  the text the indexes were built from
+     * @param indexes one of each length to keep up to date, e.g. from a {@link HashSearch.DatabaseIndexRepository}
+     */
+    public IncrementalIndex(DigitSource source, Collection<WindowIndex> indexes) {
+        Map<Integer, Levels> levels = new TreeMap<>();
+        for (WindowIndex index : indexes) levels.put(index.getLength(), new Levels(index, Collections.emptyList()));
+        this.snapshot = new Snapshot(source, Collections.unmodifiableMap(levels));
+    }
+
+    /**
+     * @param lengths the window lengths to index
+     */
+    public static IncrementalIndex build(DigitSource source, int... lengths) {
+        List<WindowIndex> indexes = new ArrayList<>();
+        for (int length : lengths) indexes.add(WindowIndex.build(source, length, true));
+        return new IncrementalIndex(source, indexes);
+    }
+
+    /**
+     * index the characters which {@code longer} has after the current text,
+     * and schedule merging the segments if there are enough of them
+     *
+     * @param longer the whole text so far, of which the current text must be a prefix
+     */
+    public synchronized void append(DigitSource longer) {
+        Snapshot current = snapshot;
+        long n = longer.length();
+        if (n < current.source.length())
+            throw new IllegalArgumentException("text of " + n + " characters is shorter than the indexed " + current.source.length());
+
+        Map<Integer, Levels> levels = new TreeMap<>();
+        for (Map.Entry<Integer, Levels> entry : current.levels.entrySet()) {
+            int length = entry.getKey();
+            Levels level = entry.getValue();
+            long start = windows(current.source, length);
+            if (windows(longer, length) == start) {
+                levels.put(length, level);
+                continue;
+            }
+            List<Segment> segments = new ArrayList<>(level.segments);
+            segments.add(new Segment(start, WindowIndex.build(longer.slice(start, n), length, true)));
+            levels.put(length, new Levels(level.base, Collections.unmodifiableList(segments)));
+        }
+        Snapshot appended = new Snapshot(longer, Collections.unmodifiableMap(levels));
+        snapshot = appended;
+
+        if (appended.needsMerge() && !merges.isShutdown() && mergeScheduled.compareAndSet(false, true)) {
+            merges.execute(() -> {
+                mergeScheduled.set(false);
+                merge();
+            });
+        }
+    }
+
+    /**
+     * merge the segments now, as {@link #append(DigitSource)} would in the background, on the calling thread;
+     * waits for a background merge which is already running
+     */
+    public void merge() {
+        synchronized (mergeLock) {
+            Snapshot merging = snapshot;
+            Map<Integer, Levels> merged = new TreeMap<>();
+            for (Map.Entry<Integer, Levels> entry : merging.levels.entrySet()) {
+                merged.put(entry.getKey(), entry.getValue().merge(merging.source));
+            }
+            install(merging, merged);
+        }
+    }
+
+    /**
+     * merge every segment into the base, on the calling thread, e.g. to write the indexes to a file
+     *
+     * @return the index of each length over the whole text appended so far, ordered by length
+     */
+    public List<WindowIndex> compact() {
+        synchronized (mergeLock) {
+            Snapshot merging = snapshot;
+            Map<Integer, Levels> merged = new TreeMap<>();
+            for (Map.Entry<Integer, Levels> entry : merging.levels.entrySet()) {
+                Levels levels = entry.getValue();
+                merged.put(entry.getKey(), levels.segments.isEmpty()
+                        ? levels
+                        : new Levels(levels.base.extend(merging.source), Collections.emptyList()));
+            }
+            install(merging, merged);
+            List<WindowIndex> indexes = new ArrayList<>();
+            for (Levels levels : merged.values()) indexes.add(levels.base);
+            return indexes;
+        }
+    }
+
+    /**
+     * replace the merged segments, keeping those which were appended while merging
+     */
+    private synchronized void install(Snapshot merging, Map<Integer, Levels> merged) {
+        Snapshot current = snapshot;
+        Map<Integer, Levels> levels = new TreeMap<>();
+        for (Map.Entry<Integer, Levels> entry : merged.entrySet()) {
+            int length = entry.getKey();
+            long end = windows(merging.source, length);
+            List<Segment> segments = new ArrayList<>(entry.getValue().segments);
+            for (Segment segment : current.levels.get(length).segments) {
+                if (segment.start >= end) segments.add(segment);
+            }
+            levels.put(length, new Levels(entry.getValue().base, Collections.unmodifiableList(segments)));
+        }
+        snapshot = new Snapshot(current.source, Collections.unmodifiableMap(levels));
+    }
+
+    /**
+     * wait until the merges scheduled so far are done
+     */
+    void awaitMerges() throws InterruptedException, ExecutionException {
+        // merges run one after another, so this runs after every merge before it
+        merges.submit(() -> {
+        }).get();
+    }
+
+    public DigitSource getSource() {
+        return snapshot.source;
+    }
+
+    public boolean isLengthIndexed(int length) {
+        return snapshot.levels.containsKey(length);
+    }
+
+    /**
+     * @return how many segments the index of {@code length} currently has besides its base
+     */
+    public int getSegmentCount(int length) {
+        return levels(snapshot, length).segments.size();
+    }
+
+    /**
+     * @param pattern as long as one of the indexed lengths
+     * @return the smallest offset at which {@code pattern} occurs, or -1
+     */
+    public long first(String pattern) {
+        Levels levels = levels(snapshot, pattern.length());
+        int first = levels.base.first(pattern);
+        if (first >= 0) return first;
+        for (Segment segment : levels.segments) {
+            first = segment.index.first(pattern);
+            if (first >= 0) return segment.start + first;
+        }
+        return -1;
+    }
+
+    /**
+     * @param pattern as long as one of the indexed lengths
+     * @return number of (possibly overlapping) occurrences of {@code pattern}
+     */
+    public long count(String pattern) {
+        Levels levels = levels(snapshot, pattern.length());
+        long count = levels.base.count(pattern);
+        for (Segment segment : levels.segments) count += segment.index.count(pattern);
+        return count;
+    }
+
+    /**
+     * @param pattern as long as one of the indexed lengths
+     * @return every offset at which {@code pattern} occurs, in ascending order, found as the iterator advances
+     */
+    public PrimitiveIterator.OfLong findAll(String pattern) {
+        Levels levels = levels(snapshot, pattern.length());
+        LongStream occurrences = stream(levels.base.occurrences(pattern, 0));
+        for (Segment segment : levels.segments) {
+            occurrences = LongStream.concat(occurrences, stream(segment.index.occurrences(pattern, 0)).map(offset -> segment.start + offset));
+        }
+        return occurrences.iterator();
+    }
+
+    private static LongStream stream(PrimitiveIterator.OfLong iterator) {
+        return StreamSupport.longStream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
+    private static Levels levels(Snapshot snapshot, int length) {
+        Levels levels = snapshot.levels.get(length);
+        if (levels == null) throw new IllegalArgumentException("length " + length + " is not indexed, only " + snapshot.levels.keySet());
+        return levels;
+    }
+
+    private static long windows(DigitSource source, int length) {
+        return Math.max(0, source.length() - length + 1);
+    }
+
+    /**
+     * stop merging; the index can still be searched, and appended to without merges
+     */
+    @Override
+    public void close() {
+        merges.shutdown();
+        try {
+            merges.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Snapshot {
+        private final DigitSource source;
+        private final Map<Integer, Levels> levels;
+
+        private Snapshot(DigitSource source, Map<Integer, Levels> levels) {
+            this.source = source;
+            this.levels = levels;
+        }
+
+        private boolean needsMerge() {
+            for (Levels level : levels.values()) {
+                if (level.needsMerge()) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * the index of one length: the base, over the start of the text, and the segments after it, in text order
+     */
+    private static final class Levels {
+        private final WindowIndex base;
+        private final List<Segment> segments;
+
+        private Levels(WindowIndex base, List<Segment> segments) {
+            this.base = base;
+            this.segments = segments;
+        }
+
+        private long segmentWindows() {
+            long windows = 0;
+            for (Segment segment : segments) windows += segment.index.getPositions().length();
+            return windows;
+        }
+
+        private boolean needsMerge() {
+            return segments.size() >= MAX_SEGMENTS
+                    || !segments.isEmpty() && segmentWindows() * BASE_MERGE_RATIO >= base.getPositions().length();
+        }
+
+        /**
+         * @param source the text the segments cover
+         */
+        private Levels merge(DigitSource source) {
+            if (segments.isEmpty()) return this;
+            if (segmentWindows() * BASE_MERGE_RATIO >= base.getPositions().length()) {
+                return new Levels(base.extend(source), Collections.emptyList());
+            }
+            if (segments.size() < MAX_SEGMENTS) return this;
+            // into the oldest segment, whose text is a prefix of the rest
+            Segment oldest = segments.get(0);
+            WindowIndex merged = oldest.index.extend(source.slice(oldest.start, source.length()));
+            return new Levels(base, Collections.singletonList(new Segment(oldest.start, merged)));
+        }
+    }
+
+    /**
+     * an index of the windows from {@code start}, over the text from there, so its offsets are relative to it
+     */
+    private static final class Segment {
+        private final long start;
+        private final WindowIndex index;
+
+        private Segment(long start, WindowIndex index) {
+            this.start = start;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package info.ankin.pisearch.indexing;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only ints, either on the heap or memory-mapped from a file,
+ * so that an index reads its arrays the same way whether it was just built or opened from disk.
+ */
+interface IntArray {
+    static IntArray of(int[] ints) {
+        return new Heap(ints);
+    }
+
+    /**
+     * map little-endian ints from a file, in segments, since a single mapping is limited to 2GB
+     *
+     * @param position byte offset of the first int in the file
+     * @param length   number of ints
+     */
+    static IntArray map(FileChannel channel, long position, int length) throws IOException {
+        return new Mapped(channel, position, length);
+    }
+
+    int length();
+
+    int get(int index);
+
+    final class Heap implements IntArray {
+        private final int[] ints;
+
+        private Heap(int[] ints) {
+            this.ints = ints;
+        }
+
+        @Override
+        public int length() {
+            return ints.length;
+        }
+
+        @Override
+        public int get(int index) {
+            return ints[index];
+        }
+    }
+
+    final class Mapped implements IntArray {
+        private static final int SEGMENT_SHIFT = 28;
+        private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+        private final IntBuffer[] segments;
+        private final int length;
+
+        private Mapped(FileChannel channel, long position, int length) throws IOException {
+            this.length = length;
+            segments = new IntBuffer[(int) (((long) length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long first = (long) i << SEGMENT_SHIFT;
+                long ints = Math.min(1L << SEGMENT_SHIFT, length - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + 4 * first, 4 * ints)
+                        .order(ByteOrder.LITTLE_ENDIAN)
+                        .asIntBuffer();
+            }
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public int get(int index) {
+            return segments[index >>> SEGMENT_SHIFT].get(index & SEGMENT_MASK);
+        }
+    }
+}
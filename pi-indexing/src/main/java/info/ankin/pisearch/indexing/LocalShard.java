@@ -0,0 +1,59 @@
+package info.ankin.pisearch.indexing;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Shard} over a slice of a text, which extends one less than the longest pattern length past its range,
+ * so that every occurrence starting in the range is found by exactly one shard, even across the boundary.
+ * Occurrences which start in that overlap belong to the next shard and are left out.
+ * <p>
+ * The windows of each pattern length are indexed when the shard is made, so that no query waits for a build;
+ * patterns of other lengths are rejected.
+ */
+class LocalShard implements Shard {
+    private final long from;
+    private final long rangeLength;
+    private final int[] lengths;
+    private final HashSearch.Searcher searcher;
+
+    LocalShard(DigitSource source, long from, long to, int... lengths) {
+        if (from < 0 || to > source.length() || from > to)
+            throw new IllegalArgumentException("range [" + from + ", " + to + ") of " + source.length() + " characters");
+        if (lengths.length == 0) throw new IllegalArgumentException("no pattern lengths to index");
+        this.lengths = Arrays.stream(lengths).sorted().distinct().toArray();
+        if (this.lengths[0] < 1) throw new IllegalArgumentException("pattern lengths must be positive: " + Arrays.toString(lengths));
+        int maxPatternLength = this.lengths[this.lengths.length - 1];
+        this.from = from;
+        this.rangeLength = to - from;
+        this.searcher = new HashSearch.Searcher(source.slice(from, Math.min(source.length(), to + maxPatternLength - 1)));
+        for (int length : this.lengths) searcher.initHashesForLength(length);
+    }
+
+    @Override
+    public long first(String pattern) {
+        check(pattern);
+        long first = searcher.search(pattern);
+        return first < 0 || first >= rangeLength ? -1 : from + first;
+    }
+
+    @Override
+    public long count(String pattern) {
+        check(pattern);
+        long count = searcher.count(pattern);
+        // less those which start in the overlap, of which there are fewer than the pattern length
+        for (long offset = searcher.findAfter(pattern, rangeLength - 1); offset >= 0; offset = searcher.findAfter(pattern, offset)) {
+            count--;
+        }
+        return count;
+    }
+
+    private void check(String pattern) {
+        if (Arrays.binarySearch(lengths, pattern.length()) < 0)
+            throw new IllegalArgumentException("shard indexes patterns of lengths " + Arrays.toString(lengths) + " only: " + pattern);
+    }
+
+    @Override
+    public String toString() {
+        return "LocalShard[" + from + ", " + (from + rangeLength) + ")";
+    }
+}
@@ -0,0 +1,63 @@
+package info.ankin.pisearch.indexing;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link DigitSource} over a text file of digits, memory-mapped in segments,
+ * since a single mapping is limited to 2GB.
+ * The page cache holds the digits instead of the heap, so files can be larger than the heap.
+ */
+public class MappedDigitSource implements DigitSource {
+    static final int SEGMENT_SHIFT = 30;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long length;
+
+    public MappedDigitSource(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.length = channel.size();
+        segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            long offset = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, length - offset));
+        }
+    }
+
+    public static MappedDigitSource open(Path path) throws IOException {
+        return new MappedDigitSource(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public byte byteAt(long index) {
+        return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+    }
+
+    @Override
+    public void read(long index, byte[] dst, int dstOffset, int length) {
+        while (length > 0) {
+            int offset = (int) (index & SEGMENT_MASK);
+            int chunk = Math.min(length, SEGMENT_SIZE - offset);
+            segments[(int) (index >>> SEGMENT_SHIFT)].get(offset, dst, dstOffset, chunk);
+            index += chunk;
+            dstOffset += chunk;
+            length -= chunk;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,223 @@
+package info.ankin.pisearch.indexing;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick search for many digit patterns at once, in a single pass over the text.
+ * <p>
+ * The patterns are put into a trie, which is completed into a deterministic automaton:
+ * each state has a transition for each of the ten digits, in one dense {@code int} table,
+ * so scanning costs one table lookup per character, however many patterns there are.
+ * Any other character in the text (such as the point in "3.14") goes back to the start state.
+ * States where some pattern ends are flagged; from there, the patterns which end at that position
+ * are found by following dictionary suffix links.
+ * Instances are immutable and can be shared between threads.
+ *
+ * @see <a href="https://doi.org/10.1145/360825.360855">Aho and Corasick, Efficient string matching</a>
+ */
+public class MultiPatternSearch {
+    private static final int DIGITS = 10;
+    private static final int NONE = -1;
+
+    private final int patternCount;
+    /**
+     * the next state, at {@code state * 10 + digit}
+     */
+    private final int[] transitions;
+    /**
+     * whether a pattern ends at each state, either its own or one of its suffixes
+     */
+    private final boolean[] matches;
+    /**
+     * the longest proper suffix of each state which is a whole pattern, or {@link #NONE}
+     */
+    private final int[] dictionaryLinks;
+    /**
+     * depth of each state, i.e. the length of the pattern ending there
+     */
+    private final int[] depths;
+    /**
+     * the patterns which end exactly at each state, as a linked list through {@link #nextPattern}
+     */
+    private final int[] firstPattern;
+    private final int[] nextPattern;
+
+    /**
+     * @param patterns non-empty strings of ASCII digits; duplicates are reported separately
+     */
+    public MultiPatternSearch(List<String> patterns) {
+        patternCount = patterns.size();
+        int maxStates = 1;
+        for (String pattern : patterns) {
+            if (pattern.isEmpty()) throw new IllegalArgumentException("patterns must not be empty");
+            for (int i = 0; i < pattern.length(); i++) {
+                if (digit(pattern.charAt(i)) < 0) throw new IllegalArgumentException("not a digit pattern: " + pattern);
+            }
+            maxStates += pattern.length();
+        }
+
+        // trie, with NONE for missing children
+        int[] children = new int[maxStates * DIGITS];
+        Arrays.fill(children, NONE);
+        int[] depths = new int[maxStates];
+        int[] firstPattern = new int[maxStates];
+        Arrays.fill(firstPattern, NONE);
+        nextPattern = new int[patternCount];
+        int states = 1;
+        for (int p = 0; p < patternCount; p++) {
+            String pattern = patterns.get(p);
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int slot = state * DIGITS + digit(pattern.charAt(i));
+                if (children[slot] == NONE) {
+                    depths[states] = depths[state] + 1;
+                    children[slot] = states++;
+                }
+                state = children[slot];
+            }
+            nextPattern[p] = firstPattern[state];
+            firstPattern[state] = p;
+        }
+
+        // breadth first, so that a state's failure link is complete before its children need it;
+        // missing children become the failure link's transition, which turns the trie into an automaton
+        int[] failures = new int[states];
+        int[] dictionaryLinks = new int[states];
+        boolean[] matches = new boolean[states];
+        dictionaryLinks[0] = NONE;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int d = 0; d < DIGITS; d++) {
+            int child = children[d];
+            if (child == NONE) {
+                children[d] = 0;
+            } else {
+                dictionaryLinks[child] = NONE;
+                matches[child] = firstPattern[child] != NONE;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int d = 0; d < DIGITS; d++) {
+                int slot = state * DIGITS + d;
+                int child = children[slot];
+                int fallback = children[failures[state] * DIGITS + d];
+                if (child == NONE) {
+                    children[slot] = fallback;
+                    continue;
+                }
+                failures[child] = fallback;
+                dictionaryLinks[child] = firstPattern[fallback] != NONE ? fallback : dictionaryLinks[fallback];
+                matches[child] = firstPattern[child] != NONE || dictionaryLinks[child] != NONE;
+                queue.add(child);
+            }
+        }
+
+        this.transitions = Arrays.copyOf(children, states * DIGITS);
+        this.matches = matches;
+        this.dictionaryLinks = dictionaryLinks;
+        this.depths = Arrays.copyOf(depths, states);
+        this.firstPattern = Arrays.copyOf(firstPattern, states);
+    }
+
+    /**
+     * receives the occurrences found by {@link #forEachMatch(DigitSource, MatchConsumer)}
+     */
+    @FunctionalInterface
+    public interface MatchConsumer {
+        /**
+         * @param pattern index of the pattern, in the list it was created with
+         * @param offset  where the occurrence starts
+         */
+        void accept(int pattern, long offset);
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * @return the first offset of each pattern, in the order they were given, or -1 for those which do not occur;
+     * the scan stops as soon as every pattern has been found
+     */
+    public long[] first(DigitSource source) {
+        long[] first = new long[patternCount];
+        Arrays.fill(first, -1);
+        int[] remaining = {patternCount};
+        // stopping is all that is needed: the first match of a pattern in scan order is its first occurrence
+        scan(source, (pattern, offset) -> {
+            if (first[pattern] >= 0) return false;
+            first[pattern] = offset;
+            return --remaining[0] == 0;
+        });
+        return first;
+    }
+
+    /**
+     * @return the number of (possibly overlapping) occurrences of each pattern, in the order they were given
+     */
+    public long[] count(DigitSource source) {
+        long[] counts = new long[patternCount];
+        scan(source, (pattern, offset) -> {
+            counts[pattern]++;
+            return false;
+        });
+        return counts;
+    }
+
+    /**
+     * report every occurrence of every pattern, in order of the offset where they end
+     */
+    public void forEachMatch(DigitSource source, MatchConsumer consumer) {
+        scan(source, (pattern, offset) -> {
+            consumer.accept(pattern, offset);
+            return false;
+        });
+    }
+
+    private interface Visitor {
+        /**
+         * @return whether to stop scanning
+         */
+        boolean visit(int pattern, long offset);
+    }
+
+    private void scan(DigitSource source, Visitor visitor) {
+        if (patternCount == 0) return;
+        long n = source.length();
+        byte[] buffer = new byte[(int) Math.min(QGramSearch.BLOCK_SIZE, n)];
+        int state = 0;
+        for (long start = 0; start < n; start += buffer.length) {
+            int length = (int) Math.min(buffer.length, n - start);
+            source.read(start, buffer, 0, length);
+            for (int i = 0; i < length; i++) {
+                int digit = buffer[i] - '0';
+                if (digit < 0 || digit >= DIGITS) {
+                    state = 0;
+                    continue;
+                }
+                state = transitions[state * DIGITS + digit];
+                if (matches[state] && report(state, start + i, visitor)) return;
+            }
+        }
+    }
+
+    /**
+     * @param end offset of the last character of the matches
+     * @return whether to stop scanning
+     */
+    private boolean report(int state, long end, Visitor visitor) {
+        for (int s = firstPattern[state] != NONE ? state : dictionaryLinks[state]; s != NONE; s = dictionaryLinks[s]) {
+            for (int p = firstPattern[s]; p != NONE; p = nextPattern[p]) {
+                if (visitor.visit(p, end - depths[s] + 1)) return true;
+            }
+        }
+        return false;
+    }
+
+    private static int digit(char c) {
+        return c >= '0' && c <= '9' ? c - '0' : -1;
+    }
+}
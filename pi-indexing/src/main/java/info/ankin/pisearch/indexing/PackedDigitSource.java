@@ -0,0 +1,36 @@
+package info.ankin.pisearch.indexing;
+
+import info.ankin.pisearch.format.PackedDigitReader;
+
+import java.io.IOException;
+
+/**
+ * a {@link DigitSource} over a packed digit file, which is memory-mapped by {@link PackedDigitReader}
+ */
+public class PackedDigitSource implements DigitSource {
+    private final PackedDigitReader reader;
+
+    public PackedDigitSource(PackedDigitReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public long length() {
+        return reader.length();
+    }
+
+    @Override
+    public byte byteAt(long index) {
+        return (byte) ('0' + reader.digitAt(index));
+    }
+
+    @Override
+    public void read(long index, byte[] dst, int dstOffset, int length) {
+        reader.readAscii(index, dst, dstOffset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,24 @@
+package info.ankin.pisearch.indexing;
+
+import java.util.PrimitiveIterator;
+
+/**
+ * An index which answers queries for patterns of any length from a single build,
+ * unlike the per-length hash index of {@link HashSearch.Searcher}.
+ */
+public interface PatternIndex {
+    /**
+     * @return number of (possibly overlapping) occurrences of {@code pattern}
+     */
+    long count(String pattern);
+
+    /**
+     * @return the smallest offset at which {@code pattern} occurs, or -1
+     */
+    long first(String pattern);
+
+    /**
+     * @return every offset at which {@code pattern} occurs, in no particular order, computed lazily
+     */
+    PrimitiveIterator.OfLong occurrences(String pattern);
+}
@@ -0,0 +1,184 @@
+package info.ankin.pisearch.indexing;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Horspool search over q-grams, tuned for digit text.
+ * <p>
+ * With only ten symbols, the single-character bad-character shift of {@link BoyerMoore} is short:
+ * almost every digit occurs in any pattern of a few digits, so the window mostly advances by one or two.
+ * Looking at the last {@code q} characters of the window instead (a q-gram, out of {@code 10^q} possible ones)
+ * makes it far less likely that they occur in the pattern, so shifts approach {@code m - q + 1}.
+ * <p>
+ * The q-gram is read from the text as a single little-endian {@code int} and hashed into a small shift table,
+ * which stays in the L1 cache; colliding q-grams share the smaller of their shifts, which is always safe.
+ * That keeps the work per window to one load, one multiplication and one table lookup,
+ * as the next window cannot be found before the shift for this one is known.
+ * Instances are immutable and can be shared between threads.
+ *
+ * @see <a href="https://doi.org/10.1002/spe.4380100608">Horspool, Practical fast searching in strings</a>
+ * @see <a href="https://www.cs.arizona.edu/sites/default/files/TR94-17.pdf">Wu and Manber, A fast algorithm for multi-pattern searching</a>
+ */
+public class QGramSearch {
+    /**
+     * the longest supported q-gram, which fills a whole {@code int}
+     */
+    public static final int MAX_Q = 4;
+    /**
+     * how much of a {@link DigitSource} is copied into a buffer at a time
+     */
+    static final int BLOCK_SIZE = 1 << 16;
+    private static final int TABLE_BITS = 12;
+    private static final int GOLDEN = 0x9E3779B1;
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[] pattern;
+    private final int q;
+    /**
+     * selects the q bytes of a q-gram out of an {@code int}
+     */
+    private final int mask;
+    /**
+     * how far to move the window when its last q-gram hashes to this index;
+     * zero for the hash of the pattern's own last q-gram, when the window has to be compared
+     */
+    private final int[] shift;
+    /**
+     * the shift after comparing a window
+     */
+    private final int lastShift;
+
+    public QGramSearch(String pattern) {
+        this(pattern, defaultQ(pattern.length()));
+    }
+
+    /**
+     * @param pattern ASCII text to search for
+     * @param q       length of the q-grams, from 1 to {@link #MAX_Q}, at most the pattern length
+     */
+    public QGramSearch(String pattern, int q) {
+        this.pattern = pattern.getBytes(StandardCharsets.US_ASCII);
+        int m = this.pattern.length;
+        if (m == 0) q = 1;
+        if (q < 1 || q > MAX_Q || (m > 0 && q > m))
+            throw new IllegalArgumentException("q must be between 1 and " + Math.min(m, MAX_Q) + ": " + q);
+        this.q = q;
+        this.mask = q == 4 ? -1 : (1 << (8 * q)) - 1;
+
+        shift = new int[1 << TABLE_BITS];
+        Arrays.fill(shift, Math.max(1, m - q + 1));
+        if (m == 0) {
+            lastShift = 1;
+            return;
+        }
+        // every q-gram but the last one; the rightmost occurrence (or colliding q-gram) wins
+        for (int end = q - 1; end < m - 1; end++) {
+            int h = hash(gram(this.pattern, end - q + 1));
+            shift[h] = Math.min(shift[h], m - 1 - end);
+        }
+        int last = hash(gram(this.pattern, m - q));
+        lastShift = shift[last];
+        shift[last] = 0;
+    }
+
+    /**
+     * short q-grams turned out best for digits: longer ones do not lengthen the shifts enough to pay for themselves
+     */
+    static int defaultQ(int m) {
+        if (m < 2) return 1;
+        if (m < 12) return 2;
+        return 3;
+    }
+
+    /**
+     * @return the bytes {@code [offset, offset + 4)} as a little-endian int, zero-filled beyond the end of the array
+     */
+    private static int word(byte[] text, int offset) {
+        if (offset + 4 <= text.length) return (int) INT.get(text, offset);
+        int word = 0;
+        for (int k = 0; offset + k < text.length; k++) word |= (text[offset + k] & 0xFF) << (8 * k);
+        return word;
+    }
+
+    private int gram(byte[] text, int offset) {
+        return word(text, offset) & mask;
+    }
+
+    private static int hash(int gram) {
+        return (gram * GOLDEN) >>> (32 - TABLE_BITS);
+    }
+
+    public int getQ() {
+        return q;
+    }
+
+    /**
+     * @return the index of the first occurrence of the pattern in {@code text}, or -1
+     */
+    public int search(byte[] text) {
+        return search(text, 0, text.length);
+    }
+
+    /**
+     * @param text the text
+     * @param from first index at which a match may start
+     * @param to   index after the last character a match may include
+     * @return the index of the first occurrence of the pattern in {@code text[from, to)}, or -1
+     */
+    public int search(byte[] text, int from, int to) {
+        int m = pattern.length;
+        if (m == 0) return from <= to ? from : -1;
+
+        for (int i = from; i <= to - m; ) {
+            int s = shift[hash(gram(text, i + m - q))];
+            if (s == 0) {
+                if (matchesAt(text, i)) return i;
+                i += lastShift;
+            } else {
+                i += s;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first occurrence of the pattern in {@code source}, or -1
+     */
+    public long search(DigitSource source) {
+        return search(source, 0);
+    }
+
+    /**
+     * searches a block at a time, copied into a buffer with enough overlap for a match across blocks
+     *
+     * @param source the text
+     * @param from   first index at which a match may start
+     * @return the index of the first occurrence of the pattern at or after {@code from}, or -1
+     */
+    public long search(DigitSource source, long from) {
+        int m = pattern.length;
+        long n = source.length();
+        if (m == 0) return from <= n ? from : -1;
+
+        byte[] buffer = new byte[(int) Math.min(BLOCK_SIZE + m - 1, Math.max(0, n - from))];
+        for (long start = from; start <= n - m; start += BLOCK_SIZE) {
+            int length = (int) Math.min(buffer.length, n - start);
+            source.read(start, buffer, 0, length);
+            int found = search(buffer, 0, length);
+            if (found >= 0) return start + found;
+        }
+        return -1;
+    }
+
+    private boolean matchesAt(byte[] text, int i) {
+        // the last q-gram is only known to hash the same
+        for (int j = pattern.length - 1; j >= 0; j--) {
+            if (text[i + j] != pattern[j]) return false;
+        }
+        return true;
+    }
+}
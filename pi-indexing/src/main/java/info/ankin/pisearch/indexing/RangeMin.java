@@ -0,0 +1,64 @@
+package info.ankin.pisearch.indexing;
+
+/**
+ * Range-minimum queries over an int array, for the first occurrence among a range of suffixes.
+ * <p>
+ * The array is cut into blocks of {@link #BLOCK} entries; a sparse table over the block minimums answers
+ * the whole blocks of a query in constant time, and at most two partial blocks are scanned.
+ * That costs about {@code log2(n / 64) / 64} ints per entry, instead of {@code log2(n)} for a full sparse table.
+ */
+final class RangeMin {
+    static final int BLOCK = 64;
+
+    private final int[] values;
+    /**
+     * {@code table[j][b]} is the minimum of the blocks {@code [b, b + 2^j)}
+     */
+    private final int[][] table;
+
+    RangeMin(int[] values) {
+        this.values = values;
+        int blocks = (values.length + BLOCK - 1) / BLOCK;
+        int levels = 1;
+        while ((1 << levels) <= blocks) levels++;
+        table = new int[levels][];
+
+        table[0] = new int[blocks];
+        for (int b = 0; b < blocks; b++) table[0][b] = scan(b * BLOCK, Math.min(values.length, (b + 1) * BLOCK));
+        for (int j = 1; j < levels; j++) {
+            int[] previous = table[j - 1];
+            int[] level = new int[blocks - (1 << j) + 1];
+            for (int b = 0; b < level.length; b++) level[b] = Math.min(previous[b], previous[b + (1 << (j - 1))]);
+            table[j] = level;
+        }
+    }
+
+    /**
+     * @return the smallest value in {@code [from, to)}, or {@link Integer#MAX_VALUE} if the range is empty
+     */
+    int min(int from, int to) {
+        if (from >= to) return Integer.MAX_VALUE;
+        int firstBlock = (from + BLOCK - 1) / BLOCK;
+        int lastBlock = to / BLOCK;
+        if (firstBlock >= lastBlock) return scan(from, to);
+
+        int min = Math.min(scan(from, firstBlock * BLOCK), scan(lastBlock * BLOCK, to));
+        int j = 31 - Integer.numberOfLeadingZeros(lastBlock - firstBlock);
+        return Math.min(min, Math.min(table[j][firstBlock], table[j][lastBlock - (1 << j)]));
+    }
+
+    /**
+     * @return approximate heap footprint, values included
+     */
+    long sizeInBytes() {
+        long size = 4L * values.length;
+        for (int[] level : table) size += 4L * level.length;
+        return size;
+    }
+
+    private int scan(int from, int to) {
+        int min = Integer.MAX_VALUE;
+        for (int i = from; i < to; i++) min = Math.min(min, values[i]);
+        return min;
+    }
+}
@@ -0,0 +1,56 @@
+package info.ankin.pisearch.indexing;
+
+/**
+ * An immutable bit vector which counts the set bits before any position in constant time.
+ * <p>
+ * A running count is kept for every {@link #BLOCK_WORDS} words (512 bits),
+ * so the rank of a position is that count plus at most eight {@link Long#bitCount(long)}s;
+ * the counts add 6.25% to the size of the bits.
+ */
+final class RankBitVector {
+    static final int BLOCK_WORDS = 8;
+
+    private final long[] words;
+    private final int[] blockRanks;
+    private final int length;
+
+    /**
+     * @param words  the bits, least significant bit first
+     * @param length number of bits
+     */
+    RankBitVector(long[] words, int length) {
+        this.words = words;
+        this.length = length;
+        blockRanks = new int[words.length / BLOCK_WORDS + 1];
+        int rank = 0;
+        for (int w = 0; w < words.length; w++) {
+            if (w % BLOCK_WORDS == 0) blockRanks[w / BLOCK_WORDS] = rank;
+            rank += Long.bitCount(words[w]);
+        }
+        if (words.length % BLOCK_WORDS == 0) blockRanks[words.length / BLOCK_WORDS] = rank;
+    }
+
+    int length() {
+        return length;
+    }
+
+    boolean get(int i) {
+        return (words[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * @return number of set bits in {@code [0, i)}
+     */
+    int rank1(int i) {
+        int word = i >>> 6;
+        int rank = blockRanks[word / BLOCK_WORDS];
+        for (int w = word - word % BLOCK_WORDS; w < word; w++) rank += Long.bitCount(words[w]);
+        int bit = i & 63;
+        if (bit != 0) rank += Long.bitCount(words[word] & ((1L << bit) - 1));
+        return rank;
+    }
+
+    long sizeInBytes() {
+        return 8L * words.length + 4L * blockRanks.length;
+    }
+}
@@ -0,0 +1,209 @@
+package info.ankin.pisearch.indexing;
+
+import java.util.Arrays;
+
+/**
+ * Suffix array construction by induced sorting (SA-IS), in linear time.
+ * <p>
+ * The text is given as symbols {@code 1..k} followed by a unique, smallest sentinel {@code 0};
+ * the recursion works in place, storing the reduced problem in the suffix array being built.
+ *
+ * @see <a href="https://doi.org/10.1109/DCC.2009.42">Nong, Zhang and Chan, Linear Suffix Array Construction by Almost Pure Induced-Sorting</a>
+ */
+final class SaIs {
+    private SaIs() {
+    }
+
+    /**
+     * @param text the symbols of a text, {@code text.get(text.length() - 1)} being the sentinel
+     */
+    interface Text {
+        int length();
+
+        int get(int i);
+    }
+
+    /**
+     * an ASCII text, with the byte values ranked so that the alphabet is small, and a sentinel appended
+     */
+    static final class ByteText implements Text {
+        private final byte[] bytes;
+        private final int[] ranks;
+
+        /**
+         * @param bytes the text
+         * @param ranks for each byte value, its rank among the values that occur, from 1
+         */
+        ByteText(byte[] bytes, int[] ranks) {
+            this.bytes = bytes;
+            this.ranks = ranks;
+        }
+
+        @Override
+        public int length() {
+            return bytes.length + 1;
+        }
+
+        @Override
+        public int get(int i) {
+            return i == bytes.length ? 0 : ranks[bytes[i] & 0xFF];
+        }
+    }
+
+    /**
+     * a slice of an int array, for the reduced problem
+     */
+    static final class IntText implements Text {
+        private final int[] array;
+        private final int offset;
+        private final int length;
+
+        IntText(int[] array, int offset, int length) {
+            this.array = array;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public int get(int i) {
+            return array[offset + i];
+        }
+    }
+
+    /**
+     * @param bytes an ASCII text
+     * @return the suffix array of {@code bytes}, without the sentinel
+     */
+    static int[] suffixArray(byte[] bytes) {
+        if (bytes.length == 0) return new int[0];
+
+        int[] ranks = new int[256];
+        for (byte b : bytes) ranks[b & 0xFF] = 1;
+        int k = 0;
+        for (int c = 0; c < ranks.length; c++) if (ranks[c] != 0) ranks[c] = ++k;
+
+        int[] sa = new int[bytes.length + 1];
+        sais(new ByteText(bytes, ranks), sa, bytes.length + 1, k);
+        // the sentinel is always the smallest suffix
+        return Arrays.copyOfRange(sa, 1, sa.length);
+    }
+
+    /**
+     * @param t  the text, with a sentinel at {@code n - 1}
+     * @param sa where to put the suffix array, at least {@code n} long
+     * @param n  the length of the text, sentinel included
+     * @param k  the largest symbol
+     */
+    static void sais(Text t, int[] sa, int n, int k) {
+        // S-type (true) or L-type (false) of each suffix
+        boolean[] s = new boolean[n];
+        s[n - 1] = true;
+        for (int i = n - 2; i >= 0; i--) {
+            int a = t.get(i);
+            int b = t.get(i + 1);
+            s[i] = a < b || (a == b && s[i + 1]);
+        }
+        int[] buckets = new int[k + 1];
+
+        // stage 1: sort the LMS substrings
+        bucketEnds(t, buckets, n);
+        Arrays.fill(sa, 0, n, -1);
+        for (int i = 1; i < n; i++) if (isLms(s, i)) sa[--buckets[t.get(i)]] = i;
+        induceL(t, sa, s, buckets, n);
+        induceS(t, sa, s, buckets, n);
+
+        // compact the sorted LMS substrings into the front
+        int n1 = 0;
+        for (int i = 0; i < n; i++) if (isLms(s, sa[i])) sa[n1++] = sa[i];
+
+        // name them: equal LMS substrings get equal names, in sorted order
+        Arrays.fill(sa, n1, n, -1);
+        int name = 0;
+        int previous = -1;
+        for (int i = 0; i < n1; i++) {
+            int position = sa[i];
+            boolean different = false;
+            for (int d = 0; d < n; d++) {
+                if (previous == -1 || t.get(position + d) != t.get(previous + d) || s[position + d] != s[previous + d]) {
+                    different = true;
+                    break;
+                } else if (d > 0 && (isLms(s, position + d) || isLms(s, previous + d))) {
+                    break;
+                }
+            }
+            if (different) {
+                name++;
+                previous = position;
+            }
+            sa[n1 + position / 2] = name - 1;
+        }
+        for (int i = n - 1, j = n - 1; i >= n1; i--) if (sa[i] >= 0) sa[j--] = sa[i];
+
+        // stage 2: sort the reduced problem, recursively if the names are not unique yet
+        IntText reduced = new IntText(sa, n - n1, n1);
+        if (name < n1) {
+            sais(reduced, sa, n1, name - 1);
+        } else {
+            for (int i = 0; i < n1; i++) sa[reduced.get(i)] = i;
+        }
+
+        // stage 3: induce the whole suffix array from the sorted LMS suffixes
+        bucketEnds(t, buckets, n);
+        for (int i = 1, j = 0; i < n; i++) if (isLms(s, i)) sa[n - n1 + j++] = i;
+        for (int i = 0; i < n1; i++) sa[i] = sa[n - n1 + sa[i]];
+        Arrays.fill(sa, n1, n, -1);
+        for (int i = n1 - 1; i >= 0; i--) {
+            int j = sa[i];
+            sa[i] = -1;
+            sa[--buckets[t.get(j)]] = j;
+        }
+        induceL(t, sa, s, buckets, n);
+        induceS(t, sa, s, buckets, n);
+    }
+
+    private static boolean isLms(boolean[] s, int i) {
+        return i > 0 && s[i] && !s[i - 1];
+    }
+
+    private static void bucketStarts(Text t, int[] buckets, int n) {
+        countSymbols(t, buckets, n);
+        for (int c = 0, sum = 0; c < buckets.length; c++) {
+            sum += buckets[c];
+            buckets[c] = sum - buckets[c];
+        }
+    }
+
+    private static void bucketEnds(Text t, int[] buckets, int n) {
+        countSymbols(t, buckets, n);
+        for (int c = 0, sum = 0; c < buckets.length; c++) {
+            sum += buckets[c];
+            buckets[c] = sum;
+        }
+    }
+
+    private static void countSymbols(Text t, int[] buckets, int n) {
+        Arrays.fill(buckets, 0);
+        for (int i = 0; i < n; i++) buckets[t.get(i)]++;
+    }
+
+    private static void induceL(Text t, int[] sa, boolean[] s, int[] buckets, int n) {
+        bucketStarts(t, buckets, n);
+        for (int i = 0; i < n; i++) {
+            int j = sa[i] - 1;
+            if (j >= 0 && !s[j]) sa[buckets[t.get(j)]++] = j;
+        }
+    }
+
+    private static void induceS(Text t, int[] sa, boolean[] s, int[] buckets, int n) {
+        bucketEnds(t, buckets, n);
+        for (int i = n - 1; i >= 0; i--) {
+            int j = sa[i] - 1;
+            if (j >= 0 && s[j]) sa[--buckets[t.get(j)]] = j;
+        }
+    }
+}
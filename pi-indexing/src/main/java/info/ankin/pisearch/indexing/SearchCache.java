@@ -0,0 +1,346 @@
+package info.ankin.pisearch.indexing;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of query results in front of a {@link HashSearch.Searcher}, for traffic where a few patterns
+ * (dates, "123456", "000000") make up most queries: a hit is a map lookup, without touching the index.
+ * <p>
+ * Eviction is segmented LRU, weighed by the approximate size of each result.
+ * New results start in a probationary segment, and move to the protected one when they are hit again,
+ * so a burst of one-off queries only evicts other one-off queries, never the hot ones.
+ * The protected segment is capped at {@link #PROTECTED_SHARE} of the total; when it is over, its least recently
+ * used results go back to probation, and the least recently used results of probation are evicted.
+ * <p>
+ * Hits take no lock: results are looked up in a concurrent map, and each hit is only noted in a small ring,
+ * which is applied to the segments on the next miss, or after {@link #DRAIN_EVERY} hits by whichever thread gets
+ * the lock without waiting.
+ * The ring drops hits while it is full, so recency is approximate under load, which makes little difference to
+ * which results are hot. Misses, and the queries for them, run outside the lock too; only adding a result takes it.
+ * <p>
+ * Results belong to a searcher and to its {@link HashSearch.Searcher#getVersion() version}: one cached before its
+ * indexes were cleared or replaced is a miss, and is replaced on the way.
+ * {@link #replaceSearcher(HashSearch.Searcher) Replacing} the searcher, when the corpus changes, drops every cached
+ * result, including any computed concurrently against the old one.
+ *
+ * @see <a href="https://doi.org/10.1109/2.268884">Karedla et al., Caching strategies to improve disk system performance</a>
+ */
+public class SearchCache {
+    public static final long DEFAULT_MAX_BYTES = 16L << 20;
+    public static final int DEFAULT_CONTEXT_RADIUS = 10;
+    /**
+     * part of the capacity which the protected segment may fill
+     */
+    static final double PROTECTED_SHARE = 0.8;
+    /**
+     * hits noted before they are applied to the segments; a power of two
+     */
+    static final int DRAIN_EVERY = 32;
+    private static final int READ_BUFFER_SIZE = 4 * DRAIN_EVERY;
+    /**
+     * rough overhead of an entry in all three maps, besides its strings
+     */
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final long maxBytes;
+    private final int contextRadius;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile HashSearch.Searcher searcher;
+
+    /**
+     * hits not yet applied, at the number of the hit modulo the size
+     */
+    private final AtomicReferenceArray<Entry> reads = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong readCount = new AtomicLong();
+
+    /**
+     * guards the segments, which keep the order of {@link #entries}
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationBytes;
+    private long protectedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public SearchCache(HashSearch.Searcher searcher) {
+        this(searcher, DEFAULT_MAX_BYTES, DEFAULT_CONTEXT_RADIUS);
+    }
+
+    /**
+     * @param searcher      where results come from
+     * @param maxBytes      upper bound for the combined size of all cached results
+     * @param contextRadius characters on either side of the first occurrence to keep, as in {@link HashSearch.Searcher#context(long, int, int)}
+     */
+    public SearchCache(HashSearch.Searcher searcher, long maxBytes, int contextRadius) {
+        this.searcher = searcher;
+        this.maxBytes = maxBytes;
+        this.contextRadius = contextRadius;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the result for {@code pattern}, from the cache or else from the searcher
+     */
+    public Result get(String pattern) {
+        HashSearch.Searcher searcher = this.searcher;
+        long version = searcher.getVersion();
+        Entry entry = entries.get(pattern);
+        if (entry != null && entry.searcher == searcher && entry.version == version) {
+            hits.increment();
+            recordHit(entry);
+            return entry.result;
+        }
+        misses.increment();
+
+        Result result = query(searcher, pattern);
+        put(new Entry(pattern, result, searcher, version));
+        return result;
+    }
+
+    /**
+     * start over with another searcher, e.g. over a new corpus, dropping every cached result
+     */
+    public void replaceSearcher(HashSearch.Searcher searcher) {
+        lock.lock();
+        try {
+            this.searcher = searcher;
+            clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            probation.clear();
+            protectedSegment.clear();
+            probationBytes = 0;
+            protectedBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        lock.lock();
+        try {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(),
+                    probation.size() + protectedSegment.size(), probationBytes + protectedBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Result query(HashSearch.Searcher searcher, String pattern) {
+        long first = searcher.search(pattern);
+        long count = first < 0 ? 0 : searcher.count(pattern);
+        String context = first < 0 ? null : searcher.context(first, pattern.length(), contextRadius);
+        return new Result(first, count, context);
+    }
+
+    /**
+     * note a hit for the segments, overwriting one not applied yet if the ring has come round, and apply them
+     * every so often unless another thread is already busy with the segments
+     */
+    private void recordHit(Entry entry) {
+        long count = readCount.getAndIncrement();
+        reads.lazySet((int) (count % READ_BUFFER_SIZE), entry);
+        if ((count & (DRAIN_EVERY - 1)) == DRAIN_EVERY - 1 && lock.tryLock()) {
+            try {
+                drainReads();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * apply the noted hits: a second hit promotes a result, making room by demoting the protected segment's
+     * least recently used; a hit on a protected result makes it the most recently used
+     */
+    private void drainReads() {
+        for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            Entry entry = reads.getAndSet(i, null);
+            if (entry == null) continue;
+            Entry probationary = probation.get(entry.pattern);
+            if (probationary == entry) {
+                probation.remove(entry.pattern);
+                probationBytes -= entry.weight;
+                protectedSegment.put(entry.pattern, entry);
+                protectedBytes += entry.weight;
+                demote();
+            } else if (probationary == null) {
+                protectedSegment.get(entry.pattern);
+            }
+        }
+    }
+
+    private void put(Entry entry) {
+        if (entry.weight > maxBytes) return;
+        lock.lock();
+        try {
+            if (entry.searcher != searcher) return;
+            // while the lock is held anyway, so that hits are not held back when there are few of them
+            drainReads();
+            Entry previous = entries.get(entry.pattern);
+            if (previous != null) {
+                // another thread may have cached the same pattern meanwhile
+                if (previous.searcher == entry.searcher && previous.version == entry.version) return;
+                remove(previous);
+            }
+
+            entries.put(entry.pattern, entry);
+            probation.put(entry.pattern, entry);
+            probationBytes += entry.weight;
+            Iterator<Map.Entry<String, Entry>> iterator = probation.entrySet().iterator();
+            while (probationBytes + protectedBytes > maxBytes && iterator.hasNext()) {
+                Entry eldest = iterator.next().getValue();
+                iterator.remove();
+                entries.remove(eldest.pattern, eldest);
+                probationBytes -= eldest.weight;
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.pattern, entry);
+        if (probation.remove(entry.pattern, entry)) {
+            probationBytes -= entry.weight;
+        } else if (protectedSegment.remove(entry.pattern, entry)) {
+            protectedBytes -= entry.weight;
+        }
+    }
+
+    /**
+     * move the least recently used protected results back to probation, until the protected segment fits its share
+     */
+    private void demote() {
+        Iterator<Map.Entry<String, Entry>> iterator = protectedSegment.entrySet().iterator();
+        while (protectedBytes > maxBytes * PROTECTED_SHARE && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            protectedBytes -= eldest.weight;
+            probation.put(eldest.pattern, eldest);
+            probationBytes += eldest.weight;
+        }
+    }
+
+    private static final class Entry {
+        private final String pattern;
+        private final Result result;
+        private final long weight;
+        private final HashSearch.Searcher searcher;
+        private final long version;
+
+        private Entry(String pattern, Result result, HashSearch.Searcher searcher, long version) {
+            this.pattern = pattern;
+            this.result = result;
+            this.weight = ENTRY_OVERHEAD + 2L * pattern.length() + (result.context == null ? 0 : 2L * result.context.length());
+            this.searcher = searcher;
+            this.version = version;
+        }
+    }
+
+    /**
+     * what is known about one pattern in the searcher's text
+     */
+    public static final class Result {
+        private final long first;
+        private final long count;
+        private final String context;
+
+        Result(long first, long count, String context) {
+            this.first = first;
+            this.count = count;
+            this.context = context;
+        }
+
+        /**
+         * @return the first offset, or -1 if the pattern does not occur
+         */
+        public long getFirst() {
+            return first;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the first occurrence with the characters around it, or null if the pattern does not occur
+         */
+        public String getContext() {
+            return context;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{first=" + first + ", count=" + count + ", context='" + context + "'}";
+        }
+    }
+
+    /**
+     * point-in-time counters of a {@link SearchCache}
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final long bytes;
+
+        Stats(long hits, long misses, long evictions, int entries, long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                    + ", entries=" + entries + ", bytes=" + bytes + "}";
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package info.ankin.pisearch.indexing;
+
+import java.io.IOException;
+
+/**
+ * One part of a text which is split by offset, answering for the occurrences which start in its range,
+ * with offsets into the whole text. See {@link ShardCoordinator}.
+ */
+public interface Shard {
+    /**
+     * a shard searched in this process
+     *
+     * @param source           the whole text
+     * @param from             first offset of the range this shard answers for
+     * @param to               end of that range, exclusive
+     * @param lengths the pattern lengths to index, before this returns; the shard reads past {@code to} for the longest
+     */
+    static Shard local(DigitSource source, long from, long to, int... lengths) {
+        return new LocalShard(source, from, to, lengths);
+    }
+
+    /**
+     * a shard served by a {@link ShardServer}, possibly in another process
+     *
+     * @param timeoutMillis how long to wait for connecting, and then for the answer
+     */
+    static Shard remote(String host, int port, int timeoutMillis) {
+        return new SocketShard(host, port, timeoutMillis);
+    }
+
+    /**
+     * @return the smallest offset in the whole text at which {@code pattern} starts, within this shard's range, or -1
+     * @throws IllegalArgumentException if the shard cannot answer for this pattern, e.g. one longer than it reads past its range
+     */
+    long first(String pattern) throws IOException;
+
+    /**
+     * @return number of occurrences of {@code pattern} which start within this shard's range
+     * @throws IllegalArgumentException if the shard cannot answer for this pattern, e.g. one longer than it reads past its range
+     */
+    long count(String pattern) throws IOException;
+}
@@ -0,0 +1,183 @@
+package info.ankin.pisearch.indexing;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Answers queries over a text split into {@link Shard}s, by asking all of them at once and merging their answers:
+ * the first occurrence is the smallest of the shards' first occurrences, the count is the sum of their counts.
+ * <p>
+ * Shards only answer for the occurrences starting in their own range, so {@link #boundaries(long, int)} can split
+ * the text into adjacent ranges without double counting, as long as each shard reads far enough past its range
+ * for the longest pattern. This also lifts the limit of {@link Integer#MAX_VALUE} characters per index.
+ * <p>
+ * All shards of a query share one deadline. A shard which fails or is too slow is left out,
+ * and the {@link Result} says so: its value is then only a bound, not the answer.
+ * A pattern which a shard rejects, e.g. one longer than the shards overlap, is the caller's error rather than the shard's,
+ * and fails the whole query.
+ */
+public class ShardCoordinator implements Closeable {
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    private final List<Shard> shards;
+    private final long timeoutMillis;
+    private final ExecutorService executor;
+
+    /**
+     * @param shards        covering the text in adjacent ranges
+     * @param timeoutMillis how long to wait for all shards of a query
+     */
+    public ShardCoordinator(List<Shard> shards, long timeoutMillis) {
+        this.shards = List.copyOf(shards);
+        this.timeoutMillis = timeoutMillis;
+        // shards may block on sockets, so they do not run on the compute pool
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shard-coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * {@code [host:port,host:port,...] [pattern]...}, querying {@link ShardServer}s, e.g. one process per shard
+     */
+    public static void main(String[] args) {
+        List<Shard> shards = new ArrayList<>();
+        for (String address : (args.length > 0 ? args[0] : "localhost:9000").split(",")) {
+            int colon = address.lastIndexOf(':');
+            shards.add(Shard.remote(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1), 10), (int) DEFAULT_TIMEOUT_MILLIS));
+        }
+        try (ShardCoordinator coordinator = new ShardCoordinator(shards, DEFAULT_TIMEOUT_MILLIS)) {
+            for (int i = 1; i < args.length; i++) {
+                System.out.println(args[i] + ": first " + coordinator.first(args[i]) + ", count " + coordinator.count(args[i]));
+            }
+        }
+    }
+
+    /**
+     * split {@code length} characters into ranges of about the same size
+     *
+     * @return {@code shards + 1} offsets, from 0 to {@code length}, where shard {@code i} has {@code [b[i], b[i + 1])}
+     */
+    public static long[] boundaries(long length, int shards) {
+        if (shards < 1) throw new IllegalArgumentException("need at least one shard: " + shards);
+        long[] boundaries = new long[shards + 1];
+        for (int i = 0; i <= shards; i++) {
+            boundaries[i] = Math.round((double) length * i / shards);
+        }
+        return boundaries;
+    }
+
+    /**
+     * @param lengths pattern lengths the shards will be asked for, each of which they index up front
+     * @return local shards over {@link #boundaries(long, int) equal ranges} of {@code source}
+     */
+    public static List<Shard> local(DigitSource source, int shards, int... lengths) {
+        long[] boundaries = boundaries(source.length(), shards);
+        List<Shard> local = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            local.add(Shard.local(source, boundaries[i], boundaries[i + 1], lengths));
+        }
+        return local;
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * @return the smallest offset at which {@code pattern} occurs, or -1
+     * @throws IllegalArgumentException if a shard rejects the pattern
+     */
+    public Result first(String pattern) {
+        return query(shard -> shard.first(pattern), -1, (a, b) -> a < 0 ? b : b < 0 ? a : Math.min(a, b));
+    }
+
+    /**
+     * @return number of (possibly overlapping) occurrences of {@code pattern}
+     * @throws IllegalArgumentException if a shard rejects the pattern
+     */
+    public Result count(String pattern) {
+        return query(shard -> shard.count(pattern), 0, Long::sum);
+    }
+
+    private interface Query {
+        long ask(Shard shard) throws Exception;
+    }
+
+    private Result query(Query query, long identity, LongBinaryOperator merge) {
+        List<Future<Long>> futures = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            futures.add(executor.submit(() -> query.ask(shard)));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long value = identity;
+        int failed = 0;
+        for (Future<Long> future : futures) {
+            try {
+                value = merge.applyAsLong(value, future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IllegalArgumentException) {
+                    futures.forEach(f -> f.cancel(true));
+                    throw new IllegalArgumentException(e.getCause().getMessage(), e.getCause());
+                }
+                failed++;
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                failed++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new IllegalStateException("interrupted while waiting for shards", e);
+            }
+        }
+        return new Result(value, failed);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * a merged answer, and how many shards did not contribute to it
+     */
+    public static final class Result {
+        private final long value;
+        private final int failedShards;
+
+        Result(long value, int failedShards) {
+            this.value = value;
+            this.failedShards = failedShards;
+        }
+
+        public long getValue() {
+            return value;
+        }
+
+        public int getFailedShards() {
+            return failedShards;
+        }
+
+        /**
+         * @return whether every shard answered, so that the value is exact
+         */
+        public boolean isComplete() {
+            return failedShards == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{value=" + value + ", failedShards=" + failedShards + "}";
+        }
+    }
+}
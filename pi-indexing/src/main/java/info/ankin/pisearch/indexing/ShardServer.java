@@ -0,0 +1,178 @@
+package info.ankin.pisearch.indexing;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves a {@link Shard} over TCP, for {@link Shard#remote(String, int, int)}, with one line each way:
+ * <pre>
+ *  first 1237     1925
+ *  count 1237     4
+ *  count 12x      invalid not a digit pattern: 12x
+ *  count 1237     error ...
+ * </pre>
+ * A request the shard rejects is answered {@code invalid}, any other failure {@code error}.
+ * <p>
+ * Connections are handled on a fixed number of threads, and closed after the answer.
+ * A request may be at most {@link #MAX_LINE_LENGTH} characters and must arrive within {@link #READ_TIMEOUT_MILLIS},
+ * and while all threads are busy, only a few connections wait for them; further ones are closed right away.
+ */
+public class ShardServer implements Closeable {
+    static final String ERROR = "error ";
+    static final String INVALID = "invalid ";
+    static final int MAX_LINE_LENGTH = 1024;
+    static final int READ_TIMEOUT_MILLIS = 10_000;
+    private static final int THREADS = 2 * Runtime.getRuntime().availableProcessors();
+    private static final int QUEUED_CONNECTIONS = 64;
+
+    private final Shard shard;
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+    private ExecutorService executor;
+
+    public ShardServer(Shard shard) {
+        this.shard = shard;
+    }
+
+    /**
+     * {@code [digits-file] [from] [to] [lengths] [port]}, serving a {@link Shard#local local shard}
+     * of the digits in {@code [from, to)}, where {@code to} defaults to the end of the file,
+     * for the comma-separated pattern lengths, 4 to 8 by default, all indexed before the server starts
+     */
+    public static void main(String[] args) throws IOException {
+        Path digits = Paths.get(args.length > 0 ? args[0] : "digits/pi-digits.txt");
+        DigitSource source = DigitSource.open(digits);
+        long from = args.length > 1 ? Long.parseLong(args[1], 10) : 0;
+        long to = args.length > 2 ? Long.parseLong(args[2], 10) : source.length();
+        int[] lengths = Arrays.stream((args.length > 3 ? args[3] : "4,5,6,7,8").split(",")).mapToInt(Integer::parseInt).toArray();
+        int port = args.length > 4 ? Integer.parseInt(args[4], 10) : 9000;
+
+        ShardServer server = new ShardServer(Shard.local(source, from, to, lengths));
+        server.start(new InetSocketAddress(port));
+        System.err.println("serving [" + from + ", " + to + ") of " + digits + " on port " + server.getPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    }
+
+    /**
+     * @param address where to listen, e.g. port 0 for any free one
+     */
+    public ShardServer start(InetSocketAddress address) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        // not daemons, so that the server keeps the process alive until it is closed
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUED_CONNECTIONS),
+                runnable -> new Thread(runnable, "shard-server-" + getPort()));
+        acceptor = new Thread(this::accept, "shard-server-" + getPort() + "-accept");
+        acceptor.start();
+        return this;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // closed
+                return;
+            }
+            try {
+                executor.execute(() -> handle(socket));
+            } catch (RejectedExecutionException e) {
+                // too busy, or closed
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            String answer;
+            try {
+                String line = readLine(new BufferedInputStream(socket.getInputStream()), MAX_LINE_LENGTH);
+                if (line == null) return;
+                answer = Long.toString(answer(line));
+            } catch (IllegalArgumentException e) {
+                answer = INVALID + String.valueOf(e.getMessage()).replace('\n', ' ');
+            } catch (IOException | RuntimeException e) {
+                answer = ERROR + String.valueOf(e.getMessage()).replace('\n', ' ');
+            }
+            OutputStream out = socket.getOutputStream();
+            out.write((answer + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        } catch (IOException ignored) {
+            // the client went away
+        }
+    }
+
+    private long answer(String line) throws IOException {
+        int space = line.indexOf(' ');
+        String command = space < 0 ? line : line.substring(0, space);
+        String pattern = space < 0 ? "" : line.substring(space + 1);
+        if (pattern.isEmpty() || !pattern.chars().allMatch(c -> c >= '0' && c <= '9'))
+            throw new IllegalArgumentException("not a digit pattern: " + pattern);
+        switch (command) {
+            case "first":
+                return shard.first(pattern);
+            case "count":
+                return shard.count(pattern);
+            default:
+                throw new IllegalArgumentException("unknown command: " + command);
+        }
+    }
+
+    /**
+     * read one line of ASCII, without keeping more than {@code maxLength} characters of it
+     *
+     * @return the line without its end, or null if the input ended before there was any
+     * @throws IllegalArgumentException if the line is longer than {@code maxLength}
+     */
+    static String readLine(InputStream in, int maxLength) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n') {
+            if (c == '\r') continue;
+            if (line.length() == maxLength) throw new IllegalArgumentException("line longer than " + maxLength + " characters");
+            line.append((char) c);
+        }
+        return c < 0 && line.length() == 0 ? null : line.toString();
+    }
+}
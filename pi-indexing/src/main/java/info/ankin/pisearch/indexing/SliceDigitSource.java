@@ -0,0 +1,31 @@
+package info.ankin.pisearch.indexing;
+
+/**
+ * a range of another {@link DigitSource}, see {@link DigitSource#slice(long, long)}
+ */
+class SliceDigitSource implements DigitSource {
+    private final DigitSource source;
+    private final long offset;
+    private final long length;
+
+    SliceDigitSource(DigitSource source, long offset, long length) {
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public byte byteAt(long index) {
+        return source.byteAt(offset + index);
+    }
+
+    @Override
+    public void read(long index, byte[] dst, int dstOffset, int length) {
+        source.read(offset + index, dst, dstOffset, length);
+    }
+}
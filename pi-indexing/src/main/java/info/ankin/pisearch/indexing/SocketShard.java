@@ -0,0 +1,68 @@
+package info.ankin.pisearch.indexing;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link Shard} answered by a {@link ShardServer}, with a connection per query, see there for the protocol.
+ * Patterns which the server rejects are rethrown as {@link IllegalArgumentException}s, its other errors as {@link IOException}s.
+ */
+class SocketShard implements Shard {
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
+
+    SocketShard(String host, int port, int timeoutMillis) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public long first(String pattern) throws IOException {
+        return request("first", pattern);
+    }
+
+    @Override
+    public long count(String pattern) throws IOException {
+        return request("count", pattern);
+    }
+
+    private long request(String command, String pattern) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            OutputStream out = socket.getOutputStream();
+            out.write((command + " " + pattern + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            String line;
+            try {
+                line = ShardServer.readLine(new BufferedInputStream(socket.getInputStream()), ShardServer.MAX_LINE_LENGTH);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(this + " answered with a " + e.getMessage(), e);
+            }
+            if (line == null) throw new IOException(this + " closed the connection without an answer");
+            if (line.startsWith(ShardServer.INVALID)) throw new IllegalArgumentException(this + ": " + line.substring(ShardServer.INVALID.length()));
+            if (line.startsWith(ShardServer.ERROR)) throw new IOException(this + ": " + line.substring(ShardServer.ERROR.length()));
+            try {
+                return Long.parseLong(line, 10);
+            } catch (NumberFormatException e) {
+                throw new IOException(this + " answered " + line, e);
+            }
+        } catch (SocketTimeoutException e) {
+            throw new SocketTimeoutException(this + " did not answer within " + timeoutMillis + "ms");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SocketShard[" + host + ":" + port + "]";
+    }
+}
@@ -0,0 +1,53 @@
+package info.ankin.pisearch.indexing;
+
+/**
+ * An immutable bit vector with few bits set, which counts the set bits before any set position.
+ * <p>
+ * Positions are grouped into blocks of {@link #BLOCK} bits; each set bit is kept as its offset in its block, in a byte,
+ * and a running count per block finds where a block's offsets start.
+ * With one bit in 64 set, as for the samples of an {@link FmIndex}, that is a quarter of a bit per position,
+ * against the 1.06 of a {@link RankBitVector}.
+ */
+final class SparseBitVector {
+    static final int BLOCK = 256;
+
+    /**
+     * number of set bits before each block, and the total at the end
+     */
+    private final int[] blockRanks;
+    private final byte[] offsets;
+
+    /**
+     * @param positions the set bits, in increasing order, in its first {@code count} entries
+     * @param length    number of bits
+     */
+    SparseBitVector(int[] positions, int count, int length) {
+        offsets = new byte[count];
+        blockRanks = new int[(length + BLOCK - 1) / BLOCK + 1];
+        int block = 0;
+        for (int i = 0; i < count; i++) {
+            int position = positions[i];
+            while (block <= position / BLOCK) blockRanks[block++] = i;
+            offsets[i] = (byte) (position % BLOCK);
+        }
+        while (block < blockRanks.length) blockRanks[block++] = count;
+    }
+
+    /**
+     * @return the number of set bits before {@code i} if the bit at {@code i} is set, or -1
+     */
+    int rankIfSet(int i) {
+        int block = i / BLOCK;
+        int offset = i % BLOCK;
+        // offsets in a block are increasing, and there are only a few of them
+        for (int j = blockRanks[block], end = blockRanks[block + 1]; j < end; j++) {
+            int set = offsets[j] & 0xFF;
+            if (set >= offset) return set == offset ? j : -1;
+        }
+        return -1;
+    }
+
+    long sizeInBytes() {
+        return offsets.length + 4L * blockRanks.length;
+    }
+}
@@ -0,0 +1,33 @@
+package info.ankin.pisearch.indexing;
+
+/**
+ * a {@link DigitSource} over a {@link String} which is already on the heap
+ */
+class StringDigitSource implements DigitSource {
+    private final String text;
+
+    StringDigitSource(String text) {
+        this.text = text;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    @Override
+    public long length() {
+        return text.length();
+    }
+
+    @Override
+    public byte byteAt(long index) {
+        return (byte) text.charAt(Math.toIntExact(index));
+    }
+
+    @Override
+    public String substring(long from, long to) {
+        int start = (int) Math.max(0, from);
+        int end = (int) Math.min(text.length(), to);
+        return start >= end ? "" : text.substring(start, end);
+    }
+}
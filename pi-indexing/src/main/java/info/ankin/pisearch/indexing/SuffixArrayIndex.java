@@ -0,0 +1,257 @@
+package info.ankin.pisearch.indexing;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Suffix array over a {@link DigitSource}, with its LCP array, answering queries for any pattern length.
+ * <p>
+ * The suffixes of the text are sorted once, with {@link SaIs}, so the occurrences of any pattern
+ * are a contiguous range of the suffix array, found by two binary searches in {@code O(m log n)}.
+ * The LCP array holds the length of the longest common prefix of each suffix with the previous one.
+ * The index costs 8 bytes per character (both arrays), plus the text itself, which queries read from the source.
+ * <p>
+ * {@link #save(Path)} writes both arrays to a file, so that the index can be {@link #load(Path, DigitSource) loaded}
+ * instead of rebuilt:
+ * <pre>
+ *  offset  size  content
+ *  0       4     magic, "PISA"
+ *  4       4     format version
+ *  8       8     n, length of the text
+ *  16      4n    suffix array, little-endian ints
+ *  16+4n   4n    LCP array, little-endian ints
+ * </pre>
+ */
+public class SuffixArrayIndex implements PatternIndex {
+    private static final int MAGIC = 0x50495341; // PISA
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final DigitSource source;
+    private final int[] suffixes;
+    private final int[] lcp;
+    /**
+     * for the first occurrence, i.e. the smallest offset, in a range of suffixes
+     */
+    private final RangeMin firstInRange;
+
+    SuffixArrayIndex(DigitSource source, int[] suffixes, int[] lcp) {
+        this.source = source;
+        this.suffixes = suffixes;
+        this.lcp = lcp;
+        this.firstInRange = new RangeMin(suffixes);
+    }
+
+    /**
+     * builds on the calling thread: each induced-sorting pass of {@link SaIs} scans the array in order,
+     * placing suffixes from those it has already placed, so unlike {@link WindowIndex#build(DigitSource, int, boolean)}
+     * it does not split into independent pieces; for more cores, index {@link Shard shards} side by side
+     *
+     * @param source the text, at most {@link Integer#MAX_VALUE} - 1 characters; it is kept for queries
+     */
+    public static SuffixArrayIndex build(DigitSource source) {
+        if (source.length() >= Integer.MAX_VALUE)
+            throw new UnsupportedOperationException("suffix array holds int offsets, text has " + source.length() + " characters");
+        byte[] text = new byte[(int) source.length()];
+        source.read(0, text, 0, text.length);
+        int[] suffixes = SaIs.suffixArray(text);
+        return new SuffixArrayIndex(source, suffixes, lcp(text, suffixes));
+    }
+
+    /**
+     * Kasai's algorithm, in linear time
+     *
+     * @see <a href="https://doi.org/10.1007/3-540-48194-X_17">Kasai et al., Linear-Time Longest-Common-Prefix Computation</a>
+     */
+    static int[] lcp(byte[] text, int[] suffixes) {
+        int n = suffixes.length;
+        int[] rank = new int[n];
+        for (int i = 0; i < n; i++) rank[suffixes[i]] = i;
+        int[] lcp = new int[n];
+        for (int i = 0, h = 0; i < n; i++) {
+            if (rank[i] == 0) {
+                h = 0;
+                continue;
+            }
+            int j = suffixes[rank[i] - 1];
+            while (i + h < n && j + h < n && text[i + h] == text[j + h]) h++;
+            lcp[rank[i]] = h;
+            if (h > 0) h--;
+        }
+        return lcp;
+    }
+
+    /**
+     * read an index written by {@link #save(Path)}
+     *
+     * @param path   the index file
+     * @param source the text the index was built from
+     */
+    public static SuffixArrayIndex load(Path path, DigitSource source) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) throw new IOException("not a suffix array index: " + path);
+            }
+            if (header.getInt(0) != MAGIC) throw new IOException("not a suffix array index: " + path);
+            if (header.getInt(4) != VERSION) throw new IOException("unsupported suffix array version: " + header.getInt(4));
+            long n = header.getLong(8);
+            if (n != source.length())
+                throw new IOException("index is for a text of " + n + " characters, source has " + source.length());
+            if (channel.size() != HEADER_SIZE + 8 * n)
+                throw new IOException("suffix array index of " + n + " characters should have " + (HEADER_SIZE + 8 * n) + " bytes, has " + channel.size());
+
+            // both arrays together are larger than a single mapping can be once n is over 2^28, so they are read in blocks
+            int[] suffixes = new int[(int) n];
+            int[] lcp = new int[(int) n];
+            readInts(channel, HEADER_SIZE, suffixes, READ_BUFFER_SIZE);
+            readInts(channel, HEADER_SIZE + 4 * n, lcp, READ_BUFFER_SIZE);
+            return new SuffixArrayIndex(source, suffixes, lcp);
+        }
+    }
+
+    /**
+     * fill {@code ints} with the little-endian ints at {@code position}, reading {@code bufferSize} bytes at a time
+     */
+    static void readInts(FileChannel channel, long position, int[] ints, int bufferSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        int filled = 0;
+        while (filled < ints.length) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new EOFException("index ends after " + filled + " of " + ints.length + " ints");
+            position += read;
+            buffer.flip();
+            while (buffer.remaining() >= Integer.BYTES && filled < ints.length) ints[filled++] = buffer.getInt();
+            // an int split across two reads stays at the front of the buffer
+            buffer.compact();
+        }
+    }
+
+    public void save(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(suffixes.length);
+            for (int[] array : new int[][]{suffixes, lcp}) {
+                for (int value : array) {
+                    if (!buffer.hasRemaining()) write(channel, buffer);
+                    buffer.putInt(value);
+                }
+            }
+            write(channel, buffer);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    public DigitSource getSource() {
+        return source;
+    }
+
+    /**
+     * @return the offset of the {@code i}-th smallest suffix
+     */
+    public int suffix(int i) {
+        return suffixes[i];
+    }
+
+    /**
+     * @return the length of the common prefix of the {@code i}-th smallest suffix and the one before it
+     */
+    public int lcp(int i) {
+        return lcp[i];
+    }
+
+    /**
+     * @return the longest substring which occurs at least twice, e.g. the longest repeated run of digits
+     */
+    public String longestRepeat() {
+        int best = 0;
+        for (int i = 1; i < lcp.length; i++) if (lcp[i] > lcp[best]) best = i;
+        return lcp.length == 0 ? "" : source.substring(suffixes[best], (long) suffixes[best] + lcp[best]);
+    }
+
+    @Override
+    public long count(String pattern) {
+        int[] range = range(pattern);
+        return range[1] - range[0];
+    }
+
+    @Override
+    public long first(String pattern) {
+        int[] range = range(pattern);
+        return range[0] == range[1] ? -1 : firstInRange.min(range[0], range[1]);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong occurrences(String pattern) {
+        int[] range = range(pattern);
+        return new PrimitiveIterator.OfLong() {
+            int next = range[0];
+
+            @Override
+            public boolean hasNext() {
+                return next < range[1];
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return suffixes[next++];
+            }
+        };
+    }
+
+    /**
+     * @return {@code [from, to)}, the range of suffixes which start with {@code pattern}
+     */
+    int[] range(String pattern) {
+        byte[] p = pattern.getBytes(StandardCharsets.US_ASCII);
+        // first suffix which is not smaller than the pattern
+        int low = 0;
+        int high = suffixes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(suffixes[mid], p) < 0) low = mid + 1;
+            else high = mid;
+        }
+        // first suffix after that which does not start with the pattern
+        int from = low;
+        high = suffixes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(suffixes[mid], p) <= 0) low = mid + 1;
+            else high = mid;
+        }
+        return new int[]{from, low};
+    }
+
+    /**
+     * compare the suffix at {@code offset}, cut to the length of the pattern, with the pattern
+     *
+     * @return negative, zero (the suffix starts with the pattern) or positive
+     */
+    private int compare(int offset, byte[] pattern) {
+        long n = source.length();
+        for (int i = 0; i < pattern.length; i++) {
+            // a suffix which ends first is smaller
+            if (offset + i >= n) return -1;
+            int c = (source.byteAt(offset + i) & 0xFF) - (pattern[i] & 0xFF);
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,166 @@
+package info.ankin.pisearch.indexing;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Linear search which compares many characters at once, for short patterns in digit text.
+ * <p>
+ * Rather than skipping ahead like {@link BoyerMoore} or {@link QGramSearch}, whose shifts stay short
+ * with only ten symbols, it looks at every position, but a whole register of them per step:
+ * a few characters of the pattern are broadcast and compared against the text at each position plus their offset,
+ * and only where all of them match is the rest of the pattern compared.
+ * <p>
+ * The comparisons use the Vector API ({@code jdk.incubator.vector}), 16 to 64 bytes at a time depending on the CPU,
+ * when the JVM was started with {@code --add-modules jdk.incubator.vector}, comparing the first two and last two characters.
+ * Otherwise they run on plain {@code long}s, eight bytes at a time, comparing the first and last character
+ * ({@link #isVectorized()} tells which). Both give the same results; on 10M digits with 512-bit vectors,
+ * the vectorized scan took about half the time of the other, or less. See {@code VectorSearchBenchmark}.
+ * Instances are immutable and can be shared between threads.
+ *
+ * @see <a href="http://0x80.pl/articles/simd-strfind.html">Mula, SIMD-friendly algorithms for substring searching</a>
+ */
+public class VectorSearch {
+    private static final Kernel SCALAR = new ScalarKernel();
+    /**
+     * the comparisons in use, the vectorized ones if the Vector API is available
+     */
+    private static final Kernel KERNEL = loadKernel();
+
+    private final byte[] pattern;
+    private final Kernel kernel;
+
+    public VectorSearch(String pattern) {
+        this(pattern, KERNEL);
+    }
+
+    private VectorSearch(String pattern, Kernel kernel) {
+        this.pattern = pattern.getBytes(StandardCharsets.US_ASCII);
+        this.kernel = kernel;
+    }
+
+    /**
+     * @return a search which compares eight bytes at a time even where the Vector API is available, e.g. to compare the two
+     */
+    public static VectorSearch scalar(String pattern) {
+        return new VectorSearch(pattern, SCALAR);
+    }
+
+    /**
+     * @return whether searches use the Vector API, rather than the fallback on {@code long}s
+     */
+    public static boolean isVectorized() {
+        return KERNEL != SCALAR;
+    }
+
+    private static Kernel loadKernel() {
+        // incubator modules are only resolved when asked for, and the kernel's class can only be loaded if it is
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return SCALAR;
+        try {
+            return (Kernel) Class.forName(VectorSearch.class.getPackageName() + ".VectorKernel")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    /**
+     * @return the index of the first occurrence of the pattern in {@code text}, or -1
+     */
+    public int search(byte[] text) {
+        return search(text, 0, text.length);
+    }
+
+    /**
+     * @param text the text
+     * @param from first index at which a match may start
+     * @param to   index after the last character a match may include
+     * @return the index of the first occurrence of the pattern in {@code text[from, to)}, or -1
+     */
+    public int search(byte[] text, int from, int to) {
+        if (pattern.length == 0) return from <= to ? from : -1;
+        return kernel.indexOf(text, from, to, pattern);
+    }
+
+    /**
+     * @return the index of the first occurrence of the pattern in {@code source}, or -1
+     */
+    public long search(DigitSource source) {
+        return search(source, 0);
+    }
+
+    /**
+     * searches a block at a time, copied into a buffer with enough overlap for a match across blocks
+     *
+     * @param source the text
+     * @param from   first index at which a match may start
+     * @return the index of the first occurrence of the pattern at or after {@code from}, or -1
+     */
+    public long search(DigitSource source, long from) {
+        int m = pattern.length;
+        long n = source.length();
+        if (m == 0) return from <= n ? from : -1;
+
+        byte[] buffer = new byte[(int) Math.min(QGramSearch.BLOCK_SIZE + m - 1, Math.max(0, n - from))];
+        for (long start = from; start <= n - m; start += QGramSearch.BLOCK_SIZE) {
+            int length = (int) Math.min(buffer.length, n - start);
+            source.read(start, buffer, 0, length);
+            int found = kernel.indexOf(buffer, 0, length, pattern);
+            if (found >= 0) return start + found;
+        }
+        return -1;
+    }
+
+    /**
+     * finds the first occurrence of a non-empty pattern in {@code text[from, to)}, or -1
+     */
+    interface Kernel {
+        int indexOf(byte[] text, int from, int to, byte[] pattern);
+    }
+
+    /**
+     * @return whether the middle of the pattern, all but its first and last characters, is at {@code text[i + 1]}
+     */
+    static boolean middleMatches(byte[] text, int i, byte[] pattern) {
+        for (int j = 1; j < pattern.length - 1; j++) {
+            if (text[i + j] != pattern[j]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * the same comparisons in a {@code long}, eight positions at a time, which any JVM can run
+     */
+    static final class ScalarKernel implements Kernel {
+        private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+        private static final long ONES = 0x0101010101010101L;
+        private static final long HIGHS = 0x8080808080808080L;
+
+        @Override
+        public int indexOf(byte[] text, int from, int to, byte[] pattern) {
+            int m = pattern.length;
+            int last = to - m;
+            long first = (pattern[0] & 0xFFL) * ONES;
+            long lastByte = (pattern[m - 1] & 0xFFL) * ONES;
+            int i = from;
+            for (; i + 7 <= last; i += 8) {
+                // a zero byte where both characters match; the high bits flag the lowest exactly, others may be spurious
+                long differences = ((long) LONG.get(text, i) ^ first) | ((long) LONG.get(text, i + m - 1) ^ lastByte);
+                long candidates = (differences - ONES) & ~differences & HIGHS;
+                while (candidates != 0) {
+                    int candidate = i + (Long.numberOfTrailingZeros(candidates) >>> 3);
+                    if (text[candidate] == pattern[0] && text[candidate + m - 1] == pattern[m - 1]
+                            && middleMatches(text, candidate, pattern)) return candidate;
+                    candidates &= candidates - 1;
+                }
+            }
+            for (; i <= last; i++) {
+                if (text[i] == pattern[0] && text[i + m - 1] == pattern[m - 1] && middleMatches(text, i, pattern)) return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package info.ankin.pisearch.indexing;
+
+import java.util.PriorityQueue;
+
+/**
+ * A Huffman-shaped wavelet tree: a sequence of small symbols,
+ * supporting access and rank (occurrences of a symbol before a position) by walking one root-to-leaf path.
+ * <p>
+ * Each internal node of the Huffman tree of the symbol frequencies holds one bit per symbol in its subtree,
+ * telling which child it is in. Every occurrence of a symbol therefore costs as many bits as its Huffman code:
+ * the total is within a bit per symbol of the zero-order entropy,
+ * about 3.4 bits for the uniformly distributed digits of pi.
+ */
+final class WaveletTree {
+    /**
+     * children of each internal node; a negative value {@code ~c} is the leaf of symbol {@code c}
+     */
+    private final int[][] children;
+    private final RankBitVector[] bits;
+    /**
+     * the code of each symbol: the branch taken at each level, the first one in the lowest bit
+     */
+    private final long[] codes;
+    private final int[] codeLengths;
+    /**
+     * the last internal node created, which covers every symbol
+     */
+    private final int root;
+
+    /**
+     * @param symbols  the sequence, values in {@code [0, alphabet)}, not empty
+     * @param alphabet number of possible symbol values, at least two
+     */
+    WaveletTree(int[] symbols, int alphabet) {
+        long[] frequencies = new long[alphabet];
+        for (int symbol : symbols) frequencies[symbol]++;
+
+        // huffman tree, over the symbols which occur; internal nodes are numbered from zero as they are created
+        PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        for (int c = 0; c < alphabet; c++) if (frequencies[c] > 0) queue.add(new long[]{frequencies[c], ~c});
+        // a single distinct symbol still needs an internal node to hang from, so add an unused one next to it
+        if (queue.size() == 1) {
+            int only = ~(int) queue.peek()[1];
+            queue.add(new long[]{0, ~(only == 0 ? 1 : 0)});
+        }
+        int internal = Math.max(0, queue.size() - 1);
+        children = new int[internal][];
+        int next = 0;
+        while (queue.size() > 1) {
+            long[] left = queue.poll();
+            long[] right = queue.poll();
+            children[next] = new int[]{(int) left[1], (int) right[1]};
+            queue.add(new long[]{left[0] + right[0], next++});
+        }
+        int root = next - 1;
+
+        codes = new long[alphabet];
+        codeLengths = new int[alphabet];
+        if (root >= 0) assignCodes(root, 0, 0);
+
+        int[] sizes = new int[internal];
+        for (int symbol : symbols) {
+            int node = root;
+            for (int level = 0; level < codeLengths[symbol]; level++) {
+                sizes[node]++;
+                node = children[node][(int) (codes[symbol] >>> level) & 1];
+            }
+        }
+        long[][] words = new long[internal][];
+        for (int node = 0; node < internal; node++) words[node] = new long[(sizes[node] + 63) / 64];
+        int[] positions = new int[internal];
+        for (int symbol : symbols) {
+            int node = root;
+            for (int level = 0; level < codeLengths[symbol]; level++) {
+                int branch = (int) (codes[symbol] >>> level) & 1;
+                if (branch == 1) words[node][positions[node] >>> 6] |= 1L << positions[node];
+                positions[node]++;
+                node = children[node][branch];
+            }
+        }
+        bits = new RankBitVector[internal];
+        for (int node = 0; node < internal; node++) bits[node] = new RankBitVector(words[node], sizes[node]);
+        this.root = root;
+    }
+
+    private void assignCodes(int node, long code, int length) {
+        for (int branch = 0; branch < 2; branch++) {
+            int child = children[node][branch];
+            long childCode = code | ((long) branch << length);
+            if (child < 0) {
+                codes[~child] = childCode;
+                codeLengths[~child] = length + 1;
+            } else {
+                assignCodes(child, childCode, length + 1);
+            }
+        }
+    }
+
+    /**
+     * @return number of occurrences of {@code symbol} in {@code [0, i)}
+     */
+    int rank(int symbol, int i) {
+        int node = root;
+        int length = codeLengths[symbol];
+        if (length == 0) return 0;
+        long code = codes[symbol];
+        for (int level = 0; level < length; level++) {
+            int ones = bits[node].rank1(i);
+            boolean branch = ((code >>> level) & 1) == 1;
+            i = branch ? ones : i - ones;
+            node = children[node][branch ? 1 : 0];
+        }
+        return i;
+    }
+
+    /**
+     * access and rank at once, for the LF mapping
+     *
+     * @param i        position
+     * @param rankOut  receives, at index 0, the number of occurrences of the returned symbol in {@code [0, i)}
+     * @return the symbol at {@code i}
+     */
+    int accessAndRank(int i, int[] rankOut) {
+        int node = root;
+        while (true) {
+            RankBitVector vector = bits[node];
+            boolean branch = vector.get(i);
+            int ones = vector.rank1(i);
+            i = branch ? ones : i - ones;
+            int child = children[node][branch ? 1 : 0];
+            if (child < 0) {
+                rankOut[0] = i;
+                return ~child;
+            }
+            node = child;
+        }
+    }
+
+    long sizeInBytes() {
+        long size = 16L * codes.length;
+        for (RankBitVector vector : bits) size += vector.sizeInBytes();
+        return size;
+    }
+}
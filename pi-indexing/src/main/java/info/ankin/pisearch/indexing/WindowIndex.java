@@ -0,0 +1,418 @@
+package info.ankin.pisearch.indexing;
+
+import info.ankin.pisearch.format.Pools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * The offsets of every window of one length in a {@link DigitSource}, grouped by key, for lookups of that length.
+ * <p>
+ * A window's key is a polynomial of its bytes, rolled along the text Rabin-Karp style in {@code long} arithmetic.
+ * Up to {@link #MAX_EXACT_LENGTH} characters the base is ten, which makes the key of a window of digits
+ * its exact numeric value; longer windows use a large odd base, i.e. an ordinary 64-bit hash.
+ * <p>
+ * Keys are spread over a power-of-two number of buckets, and the offsets are stored in compressed sparse row layout:
+ * {@code positions[offsets[b]]} up to {@code positions[offsets[b + 1]]} are the windows in bucket {@code b}, in text order.
+ * That is four bytes per window plus four per bucket, i.e. at most eight bytes per window,
+ * and building allocates nothing besides those two arrays.
+ * A bucket can hold more than one key, so candidates are always verified against the text.
+ * <p>
+ * A {@link #build(DigitSource, int, boolean) parallel build} splits the text into chunks,
+ * each overlapping the next by {@code length - 1} characters so that every window falls in exactly one chunk,
+ * and sorts the windows into buckets in two stable passes: by the top bits of their bucket, chunk by chunk,
+ * then within each of those ranges by the rest, range by range.
+ * It needs eight more bytes per window while building.
+ */
+public final class WindowIndex {
+    /**
+     * longest window whose key is its numeric value; 19 digits could overflow a {@code long}
+     */
+    public static final int MAX_EXACT_LENGTH = 18;
+    private static final long HASH_BASE = 0x100000001B3L;
+    private static final long SPREAD = 0x9E3779B97F4A7C15L;
+    /**
+     * texts with fewer windows are indexed on the calling thread
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+    /**
+     * the number of bucket bits the first pass of a parallel build sorts by
+     */
+    private static final int RANGE_BITS = 10;
+
+    private final DigitSource source;
+    private final int length;
+    private final int bucketBits;
+    private final IntArray offsets;
+    private final IntArray positions;
+
+    WindowIndex(DigitSource source, int length, int bucketBits, IntArray offsets, IntArray positions) {
+        this.source = source;
+        this.length = length;
+        this.bucketBits = bucketBits;
+        this.offsets = offsets;
+        this.positions = positions;
+    }
+
+    /**
+     * @param source the text, less than {@link Integer#MAX_VALUE} characters; it is kept to verify candidates
+     * @param length the window length, positive
+     */
+    public static WindowIndex build(DigitSource source, int length) {
+        return build(source, length, false);
+    }
+
+    /**
+     * @param parallel whether to build on all cores, which pays off from about a million characters
+     * @see #build(DigitSource, int)
+     */
+    public static WindowIndex build(DigitSource source, int length, boolean parallel) {
+        long n = source.length();
+        if (n > Integer.MAX_VALUE)
+            throw new UnsupportedOperationException("window index holds int positions, text has " + n + " characters");
+        if (length < 1) throw new IllegalArgumentException("window length must be positive: " + length);
+        int windows = (int) Math.max(0, n - length + 1);
+        int bucketBits = bucketBits(windows, length);
+
+        if (parallel && windows >= PARALLEL_THRESHOLD && Pools.COMPUTE.getParallelism() > 1) {
+            return buildParallel(source, length, windows, bucketBits);
+        }
+        int[] offsets = new int[(1 << bucketBits) + 1];
+        int[] positions = new int[windows];
+        if (windows == 0) return new WindowIndex(source, length, bucketBits, IntArray.of(offsets), IntArray.of(positions));
+
+        long base = base(length);
+        long power = pow(base, length - 1);
+        // counts go one slot to the right, so that after the prefix sum offsets[b] is where bucket b starts
+        long key = key(source, 0, length, base);
+        for (int i = 0; ; i++) {
+            offsets[bucket(key, bucketBits) + 1]++;
+            if (i + 1 == windows) break;
+            key = roll(key, source.byteAt(i), source.byteAt(i + length), power, base);
+        }
+        for (int b = 1; b < offsets.length; b++) offsets[b] += offsets[b - 1];
+
+        // fill, using each bucket's start as its cursor, then shift the starts back into place
+        key = key(source, 0, length, base);
+        for (int i = 0; ; i++) {
+            positions[offsets[bucket(key, bucketBits)]++] = i;
+            if (i + 1 == windows) break;
+            key = roll(key, source.byteAt(i), source.byteAt(i + length), power, base);
+        }
+        System.arraycopy(offsets, 0, offsets, 1, offsets.length - 1);
+        offsets[0] = 0;
+        return new WindowIndex(source, length, bucketBits, IntArray.of(offsets), IntArray.of(positions));
+    }
+
+    /**
+     * the same index as the sequential build, for texts of any size
+     */
+    static WindowIndex buildParallel(DigitSource source, int length, int windows, int bucketBits) {
+        int rangeBits = Math.min(RANGE_BITS, bucketBits);
+        int ranges = 1 << rangeBits;
+        int chunks = 4 * Pools.COMPUTE.getParallelism();
+        int chunkSize = (windows + chunks - 1) / chunks;
+        long base = base(length);
+        long power = pow(base, length - 1);
+
+        // each chunk rolls its own keys from its first window, reading length - 1 characters into the next chunk
+        int[] buckets = new int[windows];
+        int[][] counts = new int[chunks][ranges];
+        Pools.forEach(chunks, c -> {
+            int from = c * chunkSize;
+            int to = Math.min(windows, from + chunkSize);
+            if (from >= to) return;
+            long key = key(source, from, length, base);
+            for (int i = from; ; i++) {
+                int bucket = bucket(key, bucketBits);
+                buckets[i] = bucket;
+                counts[c][bucket >>> (bucketBits - rangeBits)]++;
+                if (i + 1 == to) break;
+                key = roll(key, source.byteAt(i), source.byteAt(i + length), power, base);
+            }
+        });
+
+        // where each chunk's windows of each range go: ranges in order, and chunks in order within a range
+        int[] rangeStarts = new int[ranges + 1];
+        for (int r = 0, start = 0; r < ranges; r++) {
+            rangeStarts[r] = start;
+            for (int c = 0; c < chunks; c++) {
+                int count = counts[c][r];
+                counts[c][r] = start;
+                start += count;
+            }
+        }
+        rangeStarts[ranges] = windows;
+
+        int[] byRange = new int[windows];
+        Pools.forEach(chunks, c -> {
+            int[] cursors = counts[c];
+            for (int i = c * chunkSize, to = Math.min(windows, i + chunkSize); i < to; i++) {
+                byRange[cursors[buckets[i] >>> (bucketBits - rangeBits)]++] = i;
+            }
+        });
+
+        // each range covers its own buckets, so it can be sorted and its offsets written independently
+        int[] offsets = new int[(1 << bucketBits) + 1];
+        int[] positions = new int[windows];
+        int bucketsPerRange = 1 << (bucketBits - rangeBits);
+        Pools.forEach(ranges, r -> {
+            int firstBucket = r * bucketsPerRange;
+            int[] cursors = new int[bucketsPerRange];
+            for (int i = rangeStarts[r]; i < rangeStarts[r + 1]; i++) cursors[buckets[byRange[i]] - firstBucket]++;
+            for (int b = 0, start = rangeStarts[r]; b < bucketsPerRange; b++) {
+                int count = cursors[b];
+                cursors[b] = start;
+                offsets[firstBucket + b] = start;
+                start += count;
+            }
+            for (int i = rangeStarts[r]; i < rangeStarts[r + 1]; i++) {
+                int position = byRange[i];
+                positions[cursors[buckets[position] - firstBucket]++] = position;
+            }
+        });
+        offsets[offsets.length - 1] = windows;
+        return new WindowIndex(source, length, bucketBits, IntArray.of(offsets), IntArray.of(positions));
+    }
+
+    /**
+     * one or two windows per bucket, but no more buckets than there are distinct keys of short windows
+     */
+    private static int bucketBits(int windows, int length) {
+        int bucketBits = 31 - Integer.numberOfLeadingZeros(Math.max(1, windows));
+        if (length <= 9) bucketBits = Math.min(bucketBits, 64 - Long.numberOfLeadingZeros(pow(10, length) - 1));
+        return Math.max(1, bucketBits);
+    }
+
+    /**
+     * the index of a longer text which starts with this one, e.g. after more digits were generated,
+     * without rolling keys over the text which is already indexed: only the new windows are read,
+     * which start in the last {@code length - 1} characters of this text or after them.
+     * <p>
+     * The buckets stay as they are, so each bucket's postings are this index's, copied as they are,
+     * followed by the new windows, which come after them in text order. Once the text has grown
+     * to four windows per bucket or more, the index is built again instead, with more buckets.
+     *
+     * @param longer the whole text, of which this index's text must be a prefix
+     */
+    public WindowIndex extend(DigitSource longer) {
+        long n = longer.length();
+        if (n < source.length())
+            throw new IllegalArgumentException("text of " + n + " characters is shorter than the indexed " + source.length());
+        if (n > Integer.MAX_VALUE)
+            throw new UnsupportedOperationException("window index holds int positions, text has " + n + " characters");
+        int indexed = positions.length();
+        int windows = (int) Math.max(0, n - length + 1);
+        if (bucketBits(windows, length) > bucketBits + 1) return build(longer, length, true);
+        if (windows == indexed) return new WindowIndex(longer, length, bucketBits, offsets, positions);
+
+        int added = windows - indexed;
+        int buckets = 1 << bucketBits;
+        int[] addedBuckets = new int[added];
+        int[] cursors = new int[buckets];
+        long base = base(length);
+        long power = pow(base, length - 1);
+        long key = key(longer, indexed, length, base);
+        for (int i = 0; ; i++) {
+            int bucket = bucket(key, bucketBits);
+            addedBuckets[i] = bucket;
+            cursors[bucket]++;
+            if (i + 1 == added) break;
+            key = roll(key, longer.byteAt(indexed + i), longer.byteAt(indexed + i + length), power, base);
+        }
+
+        // copy each bucket, leaving room after it for its new windows, where its cursor starts
+        int[] mergedOffsets = new int[buckets + 1];
+        int[] mergedPositions = new int[windows];
+        for (int b = 0, start = 0; b < buckets; b++) {
+            mergedOffsets[b] = start;
+            for (int i = offsets.get(b), end = offsets.get(b + 1); i < end; i++) mergedPositions[start++] = positions.get(i);
+            int count = cursors[b];
+            cursors[b] = start;
+            start += count;
+        }
+        mergedOffsets[buckets] = windows;
+        for (int i = 0; i < added; i++) mergedPositions[cursors[addedBuckets[i]]++] = indexed + i;
+        return new WindowIndex(longer, length, bucketBits, IntArray.of(mergedOffsets), IntArray.of(mergedPositions));
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    int getBucketBits() {
+        return bucketBits;
+    }
+
+    /**
+     * @return where each bucket starts in {@link #getPositions()}, and at the end the number of windows
+     */
+    IntArray getOffsets() {
+        return offsets;
+    }
+
+    IntArray getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return size of the posting arrays, which are on the heap unless the index was opened from a file
+     */
+    public long sizeInBytes() {
+        return 4L * offsets.length() + 4L * positions.length();
+    }
+
+    /**
+     * @param pattern exactly {@link #getLength()} characters
+     * @return the smallest offset at which {@code pattern} occurs, or -1
+     */
+    public int first(String pattern) {
+        return firstAfter(pattern, -1);
+    }
+
+    /**
+     * for paging through occurrences, passing the last one seen
+     *
+     * @param pattern exactly {@link #getLength()} characters
+     * @param offset  where the previous occurrence starts, or -1 to start at the beginning
+     * @return the smallest offset greater than {@code offset} at which {@code pattern} occurs, or -1
+     */
+    public int firstAfter(String pattern, long offset) {
+        byte[] p = bytesOf(pattern);
+        int bucket = bucket(key(p), bucketBits);
+        for (int i = lowerBound(bucket, offset + 1), end = offsets.get(bucket + 1); i < end; i++) {
+            int position = positions.get(i);
+            if (source.regionMatches(position, p)) return position;
+        }
+        return -1;
+    }
+
+    /**
+     * @param pattern exactly {@link #getLength()} characters
+     * @return number of (possibly overlapping) occurrences of {@code pattern}
+     */
+    public long count(String pattern) {
+        byte[] p = bytesOf(pattern);
+        int bucket = bucket(key(p), bucketBits);
+        long count = 0;
+        for (int i = offsets.get(bucket), end = offsets.get(bucket + 1); i < end; i++) {
+            if (source.regionMatches(positions.get(i), p)) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param pattern exactly {@link #getLength()} characters
+     * @param from    the smallest offset to report
+     * @return every offset from {@code from} at which {@code pattern} occurs, in ascending order,
+     * read from the index as the iterator advances rather than collected up front
+     */
+    public PrimitiveIterator.OfLong occurrences(String pattern, long from) {
+        byte[] p = bytesOf(pattern);
+        int bucket = bucket(key(p), bucketBits);
+        int start = lowerBound(bucket, from);
+        int end = offsets.get(bucket + 1);
+        return new PrimitiveIterator.OfLong() {
+            int i = start;
+            /**
+             * the next occurrence, or -1 if it has not been looked for yet
+             */
+            long next = -1;
+
+            @Override
+            public boolean hasNext() {
+                while (next < 0 && i < end) {
+                    int position = positions.get(i++);
+                    if (source.regionMatches(position, p)) next = position;
+                }
+                return next >= 0;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) throw new NoSuchElementException();
+                long result = next;
+                next = -1;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * @param pattern exactly {@link #getLength()} characters
+     * @return every offset at which {@code pattern} occurs, in ascending order
+     */
+    public int[] positions(String pattern) {
+        byte[] p = bytesOf(pattern);
+        int bucket = bucket(key(p), bucketBits);
+        int start = offsets.get(bucket);
+        int[] matches = new int[offsets.get(bucket + 1) - start];
+        int count = 0;
+        for (int i = 0; i < matches.length; i++) {
+            int position = positions.get(start + i);
+            if (source.regionMatches(position, p)) matches[count++] = position;
+        }
+        return count == matches.length ? matches : Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * @return the first index into {@link #positions} in {@code bucket} which is at least {@code offset},
+     * by binary search, since each bucket lists its windows in text order
+     */
+    private int lowerBound(int bucket, long offset) {
+        int low = offsets.get(bucket);
+        int high = offsets.get(bucket + 1);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (positions.get(middle) < offset) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private byte[] bytesOf(String pattern) {
+        if (pattern.length() != length)
+            throw new IllegalArgumentException("index is for length " + length + ", pattern has " + pattern.length());
+        return pattern.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private long key(byte[] pattern) {
+        long base = base(length);
+        long key = 0;
+        for (byte b : pattern) key = key * base + digit(b);
+        return key;
+    }
+
+    private static long key(DigitSource source, long from, int length, long base) {
+        long key = 0;
+        for (int i = 0; i < length; i++) key = key * base + digit(source.byteAt(from + i));
+        return key;
+    }
+
+    private static long roll(long key, byte out, byte in, long power, long base) {
+        return (key - digit(out) * power) * base + digit(in);
+    }
+
+    /**
+     * the value of a digit; other characters get some other value, which only needs to be consistent
+     */
+    private static int digit(byte b) {
+        return b - '0';
+    }
+
+    private static long base(int length) {
+        return length <= MAX_EXACT_LENGTH ? 10 : HASH_BASE;
+    }
+
+    private static int bucket(long key, int bucketBits) {
+        return (int) ((key * SPREAD) >>> (64 - bucketBits));
+    }
+
+    private static long pow(long base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) result *= base;
+        return result;
+    }
+}
@@ -0,0 +1,29 @@
+package info.ankin.pisearch.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BoyerMooreTest {
+
+    @Test
+    void test_searchesDigitSource() throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        DigitSource source = DigitSource.of(text);
+
+        for (String pattern : Arrays.asList("3.14", "1237", "999999", "12345678", text.substring(39990))) {
+            long expected = text.indexOf(pattern) < 0 ? text.length() : text.indexOf(pattern);
+            assertEquals(expected, new BoyerMoore(pattern).search(source), pattern);
+            assertEquals(expected, new BoyerMoore(pattern.toCharArray(), '9' + 1).search(source), pattern);
+        }
+        assertEquals(text.indexOf("1237", 2000), new BoyerMoore("1237").search(source, 2000));
+        // characters beyond the alphabet of the pattern
+        assertEquals(10, new BoyerMoore("1237".toCharArray(), '9' + 1).search(DigitSource.of("pi is not 1237 or zzzz")));
+    }
+
+}
@@ -0,0 +1,48 @@
+package info.ankin.pisearch.indexing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FirstOccurrenceTableTest {
+
+    @Test
+    void test_everyStringMatchesIndexOf(@TempDir Path directory) throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        FirstOccurrenceTable built = FirstOccurrenceTable.build(DigitSource.of(text), 4);
+        built.save(directory.resolve("pi.first"));
+        FirstOccurrenceTable opened = FirstOccurrenceTable.open(directory.resolve("pi.first"));
+
+        for (FirstOccurrenceTable table : new FirstOccurrenceTable[]{built, opened}) {
+            for (int length = 1; length <= 4; length++) {
+                long missing = 0;
+                for (int value = 0; value < Math.pow(10, length); value++) {
+                    String pattern = FirstOccurrenceTable.format(length, value);
+                    assertEquals(text.indexOf(pattern), table.first(pattern), pattern);
+                    if (text.indexOf(pattern) < 0) missing++;
+                }
+                assertEquals(missing, table.missing(length).count());
+            }
+        }
+    }
+
+    @Test
+    void test_searcherUsesTable() {
+        // the point interrupts the digits, so "31" does not occur
+        String text = "3.14159265358979";
+        HashSearch.Searcher searcher = new HashSearch.Searcher(text)
+                .setFirstOccurrenceTable(FirstOccurrenceTable.build(DigitSource.of(text), 3));
+
+        assertEquals(-1, searcher.search("31"));
+        assertEquals(2, searcher.search("141"));
+        assertEquals(0, searcher.search("3.1"));
+        assertEquals(6, searcher.search("9265"));
+    }
+
+}
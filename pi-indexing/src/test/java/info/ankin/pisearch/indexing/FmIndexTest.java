@@ -0,0 +1,64 @@
+package info.ankin.pisearch.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FmIndexTest {
+
+    @Test
+    void test_queriesMatchText() throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        // a small sample rate, so that locating walks across several samples
+        FmIndex index = FmIndex.build(DigitSource.of(text), 8);
+
+        for (String pattern : Arrays.asList("1", "14", "1237", "999999", "3.14", "0000000", "12345678", "x")) {
+            assertEquals(text.indexOf(pattern), index.first(pattern), pattern);
+
+            List<Long> expected = new ArrayList<>();
+            for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + 1)) expected.add((long) i);
+            List<Long> actual = new ArrayList<>();
+            PrimitiveIterator.OfLong occurrences = index.occurrences(pattern);
+            while (occurrences.hasNext()) actual.add(occurrences.nextLong());
+            Collections.sort(actual);
+
+            assertEquals(expected, actual, pattern);
+            assertEquals(expected.size(), index.count(pattern), pattern);
+        }
+    }
+
+    @Test
+    void test_firstOfEveryShortPattern() throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        FmIndex index = FmIndex.build(DigitSource.of(text));
+
+        // frequent patterns take their first from the block minimums, rare ones from the partial blocks
+        for (int length = 1; length <= 3; length++) {
+            for (int i = 0; i < (int) Math.pow(10, length); i++) {
+                String pattern = String.format("%0" + length + "d", i);
+                assertEquals(text.indexOf(pattern), index.first(pattern), pattern);
+            }
+        }
+        assertTrue(index.sizeInBytes() < 0.65 * text.length(), index.toString());
+    }
+
+    @Test
+    void test_singleSymbolText() {
+        FmIndex index = FmIndex.build(DigitSource.of("7777"), 2);
+
+        assertEquals(3, index.count("77"));
+        assertEquals(0, index.first("777"));
+        assertEquals(0, index.count("1"));
+    }
+
+}
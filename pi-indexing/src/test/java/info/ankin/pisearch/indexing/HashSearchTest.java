@@ -0,0 +1,105 @@
+package info.ankin.pisearch.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashSearchTest {
+
+    @Test
+    void test_concurrentQueriesBuildEachLengthOnce() throws Exception {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        AtomicInteger builds = new AtomicInteger();
+        HashSearch.Searcher searcher = new HashSearch.Searcher(DigitSource.of(text), new HashSearch.InMemoryIndexRepository() {
+            @Override
+            public void addIndex(WindowIndex index) {
+                builds.incrementAndGet();
+                super.addIndex(index);
+            }
+        });
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> mismatches = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t * 1000;
+                mismatches.add(executor.submit(() -> {
+                    start.await();
+                    int mismatch = 0;
+                    for (int i = 0; i < 200; i++) {
+                        for (int length = 3; length <= 6; length++) {
+                            String pattern = text.substring(offset + i, offset + i + length);
+                            if (searcher.search(pattern) != text.indexOf(pattern)) mismatch++;
+                        }
+                    }
+                    return mismatch;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> mismatch : mismatches) assertEquals(0, mismatch.get());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(4, builds.get());
+
+        // once the repository is cleared, a length is built again rather than served from a finished build
+        searcher.indexRepository.clearIndexes();
+        assertEquals(text.indexOf("1237"), searcher.search("1237"));
+        assertEquals(5, builds.get());
+        assertTrue(searcher.isLengthIndexed(4));
+    }
+
+    @Test
+    void test_countFindAllAndFindAfter() throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        HashSearch.Searcher searcher = new HashSearch.Searcher(text);
+
+        for (String pattern : Arrays.asList("1", "26", "999", "1237", "0000000", "31415926535897932384626")) {
+            List<Long> expected = new ArrayList<>();
+            for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + 1)) expected.add((long) i);
+
+            List<Long> all = new ArrayList<>();
+            searcher.findAll(pattern).forEachRemaining((LongConsumer) all::add);
+            List<Long> paged = new ArrayList<>();
+            for (long offset = searcher.findAfter(pattern, -1); offset >= 0; offset = searcher.findAfter(pattern, offset)) {
+                paged.add(offset);
+            }
+
+            assertEquals(expected.size(), searcher.count(pattern), pattern);
+            assertEquals(expected, all, pattern);
+            assertEquals(expected, paged, pattern);
+        }
+        assertEquals(0, searcher.count("12345678901234567890"));
+        assertFalse(searcher.findAll("12345678901234567890").hasNext());
+    }
+
+    @Test
+    void test_searchUsesExistingIndex() throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        HashSearch.InMemoryIndexRepository repository = new HashSearch.InMemoryIndexRepository();
+        repository.addIndex(WindowIndex.build(DigitSource.of(text), 4));
+        HashSearch.Searcher searcher = new HashSearch.Searcher(DigitSource.of(text), repository);
+
+        assertEquals(text.indexOf("1237"), searcher.search("1237"));
+        assertEquals(1, repository.indexes.size());
+    }
+
+}
@@ -0,0 +1,107 @@
+package info.ankin.pisearch.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalIndexTest {
+
+    private static List<Long> positions(String text, String pattern) {
+        List<Long> positions = new ArrayList<>();
+        for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + 1)) positions.add((long) i);
+        return positions;
+    }
+
+    @Test
+    void test_appendsMatchWholeText() throws Exception {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        DigitSource source = DigitSource.of(text);
+
+        try (IncrementalIndex index = IncrementalIndex.build(source.slice(0, 1000), 1, 4, 7)) {
+            int end = 1000;
+            for (int step = 1; end < text.length(); step = step * 3 + 1) {
+                end = Math.min(text.length(), end + step);
+                index.append(source.slice(0, end));
+                String prefix = text.substring(0, end);
+
+                // including the windows across the last append
+                List<String> patterns = new ArrayList<>(Arrays.asList("1", "1237", "9999999"));
+                for (int start = end - 7; start > end - 14 && start >= 0; start--) patterns.add(text.substring(start, start + 7));
+                for (String pattern : patterns) {
+                    assertEquals(prefix.indexOf(pattern), index.first(pattern), pattern);
+                    assertEquals(positions(prefix, pattern).size(), index.count(pattern), pattern);
+                }
+            }
+
+            index.awaitMerges();
+            assertTrue(index.getSegmentCount(4) < IncrementalIndex.MAX_SEGMENTS);
+            index.merge();
+            for (String pattern : Arrays.asList("1", "1237", "9999999", text.substring(text.length() - 7))) {
+                List<Long> all = new ArrayList<>();
+                index.findAll(pattern).forEachRemaining((LongConsumer) all::add);
+                assertEquals(positions(text, pattern), all, pattern);
+            }
+        }
+    }
+
+    @Test
+    void test_queriesDuringAppendsAndMerges() throws Exception {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        DigitSource source = DigitSource.of(text);
+        List<String> patterns = Arrays.asList("1237", "0000", "2718", text.substring(text.length() - 4));
+
+        try (IncrementalIndex index = IncrementalIndex.build(source.slice(0, 100), 4)) {
+            AtomicBoolean appending = new AtomicBoolean(true);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<Integer>> readers = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    readers.add(executor.submit(() -> {
+                        int mismatches = 0;
+                        long[] counts = new long[patterns.size()];
+                        while (appending.get()) {
+                            for (int p = 0; p < patterns.size(); p++) {
+                                String pattern = patterns.get(p);
+                                // a prefix has either no occurrence or the same first one, and never fewer than before
+                                long first = index.first(pattern);
+                                if (first >= 0 && first != text.indexOf(pattern)) mismatches++;
+                                long count = index.count(pattern);
+                                if (count < counts[p]) mismatches++;
+                                counts[p] = count;
+                            }
+                        }
+                        return mismatches;
+                    }));
+                }
+                for (int end = 100; end < text.length(); ) {
+                    end = Math.min(text.length(), end + 97);
+                    index.append(source.slice(0, end));
+                }
+                appending.set(false);
+                for (Future<Integer> mismatches : readers) assertEquals(0, mismatches.get());
+            } finally {
+                executor.shutdown();
+            }
+
+            index.awaitMerges();
+            for (String pattern : patterns) {
+                assertEquals(text.indexOf(pattern), index.first(pattern), pattern);
+                assertEquals(positions(text, pattern).size(), index.count(pattern), pattern);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package info.ankin.pisearch.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultiPatternSearchTest {
+
+    @Test
+    void test_matchesIndexOf() throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        // overlapping, nested, repeated and missing patterns
+        List<String> patterns = Arrays.asList("1", "14", "141", "1415", "14", "999999", "314", "0000000", "12345678", "5");
+        MultiPatternSearch search = new MultiPatternSearch(patterns);
+        DigitSource source = DigitSource.of(text);
+
+        long[] first = search.first(source);
+        long[] counts = search.count(source);
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            assertEquals(text.indexOf(pattern), first[i], pattern);
+
+            long count = 0;
+            for (int j = text.indexOf(pattern); j >= 0; j = text.indexOf(pattern, j + 1)) count++;
+            assertEquals(count, counts[i], pattern);
+        }
+
+        search.forEachMatch(source, (pattern, offset) ->
+                assertTrue(text.startsWith(patterns.get(pattern), (int) offset), patterns.get(pattern) + " at " + offset));
+    }
+
+    @Test
+    void test_rejectsNonDigitPatterns() {
+        assertThrows(IllegalArgumentException.class, () -> new MultiPatternSearch(Arrays.asList("3.14")));
+        assertThrows(IllegalArgumentException.class, () -> new MultiPatternSearch(Arrays.asList("")));
+    }
+
+}
@@ -0,0 +1,50 @@
+package info.ankin.pisearch.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QGramSearchTest {
+
+    @Test
+    void test_matchesIndexOf() throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        DigitSource source = DigitSource.of(text);
+        Random random = new Random(314);
+
+        for (int i = 0; i < 500; i++) {
+            int m = 1 + random.nextInt(12);
+            int offset = random.nextInt(text.length() - m);
+            // half of the patterns occur, most of the others do not
+            String pattern = i % 2 == 0 ? text.substring(offset, offset + m) : randomDigits(random, m);
+
+            for (int q = 1; q <= Math.min(m, QGramSearch.MAX_Q); q++) {
+                QGramSearch search = new QGramSearch(pattern, q);
+                assertEquals(text.indexOf(pattern), search.search(bytes), pattern + ", q = " + q);
+                assertEquals(text.indexOf(pattern, offset), search.search(source, offset), pattern + ", q = " + q);
+            }
+        }
+    }
+
+    @Test
+    void test_nonDigits() {
+        byte[] text = "3.14159".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0, new QGramSearch("3.1").search(text));
+        // a window which only hashes the same as the pattern must not match
+        assertEquals(-1, new QGramSearch("3,1").search(text));
+    }
+
+    private static String randomDigits(Random random, int length) {
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < length; i++) digits.append((char) ('0' + random.nextInt(10)));
+        return digits.toString();
+    }
+
+}
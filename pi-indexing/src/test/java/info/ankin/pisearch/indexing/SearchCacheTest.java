@@ -0,0 +1,116 @@
+package info.ankin.pisearch.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchCacheTest {
+
+    @Test
+    void test_resultsAndStats() throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        SearchCache cache = new SearchCache(new HashSearch.Searcher(text));
+
+        SearchCache.Result result = cache.get("1237");
+        assertEquals(text.indexOf("1237"), result.getFirst());
+        assertEquals(new HashSearch.Searcher(text).count("1237"), result.getCount());
+        assertTrue(result.getContext().contains(" 1237 "), result.getContext());
+        assertSame(result, cache.get("1237"));
+
+        SearchCache.Result missing = cache.get("12345678901234567890");
+        assertEquals(-1, missing.getFirst());
+        assertEquals(0, missing.getCount());
+        assertNull(missing.getContext());
+
+        SearchCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(2, stats.getEntries());
+    }
+
+    @Test
+    void test_hotPatternsSurviveScan() {
+        // room for about ten results
+        SearchCache cache = new SearchCache(new HashSearch.Searcher("31415926535897932384626433832795028841971"), 2000, 2);
+        SearchCache.Result hot = cache.get("926");
+        cache.get("926");
+
+        for (int i = 0; i < 100; i++) cache.get(String.format("%03d", i));
+
+        assertSame(hot, cache.get("926"));
+        assertTrue(cache.getStats().getEvictions() > 0);
+        assertTrue(cache.getStats().getBytes() <= 2000);
+    }
+
+    @Test
+    void test_replaceSearcherInvalidates() {
+        SearchCache cache = new SearchCache(new HashSearch.Searcher("0123456789"));
+        assertEquals(3, cache.get("345").getFirst());
+
+        cache.replaceSearcher(new HashSearch.Searcher("9876543210"));
+
+        assertEquals(0, cache.getStats().getEntries());
+        assertEquals(-1, cache.get("345").getFirst());
+        assertEquals(3, cache.get("654").getFirst());
+    }
+
+    @Test
+    void test_clearedIndexesInvalidate() {
+        HashSearch.Searcher searcher = new HashSearch.Searcher("0123456789");
+        SearchCache cache = new SearchCache(searcher);
+        SearchCache.Result result = cache.get("345");
+        assertSame(result, cache.get("345"));
+        // adding a length does not change any result
+        searcher.initHashesForLength(2);
+        assertSame(result, cache.get("345"));
+
+        searcher.indexRepository.clearIndexes();
+
+        SearchCache.Result recomputed = cache.get("345");
+        assertNotSame(result, recomputed);
+        assertEquals(3, recomputed.getFirst());
+        assertSame(recomputed, cache.get("345"));
+        assertEquals(2, cache.getStats().getMisses());
+        assertEquals(1, cache.getStats().getEntries());
+    }
+
+    @Test
+    void test_concurrentHits() throws Exception {
+        String text = "31415926535897932384626433832795028841971";
+        SearchCache cache = new SearchCache(new HashSearch.Searcher(text), 2000, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> mismatches = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                mismatches.add(executor.submit(() -> {
+                    int mismatch = 0;
+                    for (int i = 0; i < 10_000; i++) {
+                        String pattern = text.substring(i % 30, i % 30 + 3);
+                        if (cache.get(pattern).getFirst() != text.indexOf(pattern)) mismatch++;
+                    }
+                    return mismatch;
+                }));
+            }
+            for (Future<Integer> mismatch : mismatches) assertEquals(0, mismatch.get());
+        } finally {
+            executor.shutdown();
+        }
+        SearchCache.Stats stats = cache.getStats();
+        assertEquals(40_000, stats.getHits() + stats.getMisses());
+        assertTrue(stats.getBytes() <= 2000, stats.toString());
+    }
+
+}
@@ -0,0 +1,119 @@
+package info.ankin.pisearch.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShardTest {
+
+    private static long count(String text, String pattern) {
+        long count = 0;
+        for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + 1)) count++;
+        return count;
+    }
+
+    @Test
+    void test_localAndRemoteShardsMatchWholeText() throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        DigitSource source = DigitSource.of(text);
+        int[] lengths = {1, 2, 3, 4, 7, 8};
+        long[] boundaries = ShardCoordinator.boundaries(text.length(), 4);
+
+        List<Shard> shards = new ArrayList<>();
+        List<ShardServer> servers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Shard shard = Shard.local(source, boundaries[i], boundaries[i + 1], lengths);
+            if (i % 2 == 0) {
+                shards.add(shard);
+            } else {
+                ShardServer server = new ShardServer(shard).start(new InetSocketAddress("localhost", 0));
+                servers.add(server);
+                shards.add(Shard.remote("localhost", server.getPort(), 5000));
+            }
+        }
+
+        List<String> patterns = new ArrayList<>(Arrays.asList("1", "26", "999", "1237", "0000000", "12345678"));
+        // across each boundary
+        for (int i = 1; i < 4; i++) {
+            int boundary = (int) boundaries[i];
+            for (int start = boundary - 7; start <= boundary; start++) patterns.add(text.substring(start, start + 8));
+        }
+
+        try (ShardCoordinator coordinator = new ShardCoordinator(shards, 5000)) {
+            for (String pattern : patterns) {
+                ShardCoordinator.Result first = coordinator.first(pattern);
+                ShardCoordinator.Result count = coordinator.count(pattern);
+                assertEquals(text.indexOf(pattern), first.getValue(), pattern);
+                assertEquals(count(text, pattern), count.getValue(), pattern);
+                assertEquals(0, first.getFailedShards() + count.getFailedShards(), pattern);
+            }
+            // too long for the overlap, or of a length not indexed, which is not the shards' failure but the caller's
+            assertThrows(IllegalArgumentException.class, () -> shards.get(0).first("123456789"));
+            assertThrows(IllegalArgumentException.class, () -> shards.get(1).count("123456789"));
+            assertThrows(IllegalArgumentException.class, () -> coordinator.count("123456789"));
+            assertThrows(IllegalArgumentException.class, () -> shards.get(0).count("12345"));
+            assertThrows(IllegalArgumentException.class, () -> shards.get(1).first("12345"));
+            assertThrows(IllegalArgumentException.class, () -> coordinator.first("12345"));
+        } finally {
+            servers.forEach(ShardServer::close);
+        }
+    }
+
+    @Test
+    void test_serverRejectsLongLines() throws IOException {
+        Shard shard = Shard.local(DigitSource.of("3141592653589793238462643383279502884197"), 0, 40, 2);
+        try (ShardServer server = new ShardServer(shard).start(new InetSocketAddress("localhost", 0))) {
+            try (Socket socket = new Socket("localhost", server.getPort())) {
+                // more than a line's worth, without ever ending it
+                socket.getOutputStream().write(("count " + "1".repeat(ShardServer.MAX_LINE_LENGTH)).getBytes(StandardCharsets.US_ASCII));
+                String answer = ShardServer.readLine(socket.getInputStream(), ShardServer.MAX_LINE_LENGTH);
+                assertEquals("invalid line longer than " + ShardServer.MAX_LINE_LENGTH + " characters", answer);
+            }
+            assertEquals(2, Shard.remote("localhost", server.getPort(), 5000).count("79"));
+        }
+    }
+
+    @Test
+    void test_slowShardIsLeftOut() {
+        String text = "3141592653589793238462643383279502884197";
+        List<Shard> shards = new ArrayList<>(ShardCoordinator.local(DigitSource.of(text), 2, 1, 4));
+        shards.add(new Shard() {
+            @Override
+            public long first(String pattern) throws IOException {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return 0;
+            }
+
+            @Override
+            public long count(String pattern) {
+                throw new IllegalStateException("unavailable");
+            }
+        });
+
+        try (ShardCoordinator coordinator = new ShardCoordinator(shards, 200)) {
+            ShardCoordinator.Result first = coordinator.first("2643");
+            assertEquals(text.indexOf("2643"), first.getValue());
+            assertFalse(first.isComplete());
+            ShardCoordinator.Result count = coordinator.count("3");
+            assertEquals(count(text, "3"), count.getValue());
+            assertEquals(1, count.getFailedShards());
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package info.ankin.pisearch.indexing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SuffixArrayIndexTest {
+
+    @Test
+    void test_suffixArrayIsSorted() {
+        Random random = new Random(271);
+        for (int i = 0; i < 500; i++) {
+            byte[] text = new byte[random.nextInt(50)];
+            // small alphabets make for many repeats, which is where SA-IS recurses
+            int alphabet = 1 + random.nextInt(3);
+            for (int j = 0; j < text.length; j++) text[j] = (byte) ('0' + random.nextInt(alphabet));
+            String string = new String(text);
+
+            int[] expected = IntStream.range(0, text.length).boxed()
+                    .sorted((a, b) -> string.substring(a).compareTo(string.substring(b)))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            assertArrayEquals(expected, SaIs.suffixArray(text), string);
+        }
+    }
+
+    @Test
+    void test_queriesMatchText(@TempDir Path directory) throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        DigitSource source = DigitSource.of(text);
+        SuffixArrayIndex built = SuffixArrayIndex.build(source);
+        built.save(directory.resolve("pi.sa"));
+        SuffixArrayIndex loaded = SuffixArrayIndex.load(directory.resolve("pi.sa"), source);
+
+        for (String pattern : Arrays.asList("1", "14", "1237", "999999", "3.14", "0000000", "12345678")) {
+            for (SuffixArrayIndex index : Arrays.asList(built, loaded)) {
+                assertEquals(text.indexOf(pattern), index.first(pattern), pattern);
+                assertEquals(countOccurrences(text, pattern), index.count(pattern), pattern);
+
+                PrimitiveIterator.OfLong occurrences = index.occurrences(pattern);
+                while (occurrences.hasNext()) assertEquals(pattern, text.substring((int) occurrences.nextLong()).substring(0, pattern.length()));
+            }
+        }
+    }
+
+    @Test
+    void test_readIntsAcrossBuffers(@TempDir Path directory) throws IOException {
+        SuffixArrayIndex index = SuffixArrayIndex.build(DigitSource.of("3.14159265358979323846264338327950288419716939937510"));
+        Path path = directory.resolve("pi.sa");
+        index.save(path);
+
+        int n = (int) index.getSource().length();
+        int[] expected = new int[n];
+        for (int i = 0; i < n; i++) expected[i] = index.suffix(i);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // buffers which split ints, which hold just one, and which hold the whole array
+            for (int bufferSize : new int[]{4, 5, 7, 64, 1 << 16}) {
+                int[] suffixes = new int[n];
+                SuffixArrayIndex.readInts(channel, 16, suffixes, bufferSize);
+                assertArrayEquals(expected, suffixes, "buffer of " + bufferSize);
+            }
+            // the LCP array ends with the file
+            int[] tooMany = new int[n + 1];
+            assertThrows(EOFException.class, () -> SuffixArrayIndex.readInts(channel, 16 + 4L * n, tooMany, 7));
+        }
+    }
+
+    private static long countOccurrences(String text, String pattern) {
+        long count = 0;
+        for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + 1)) count++;
+        return count;
+    }
+
+}
@@ -0,0 +1,65 @@
+package info.ankin.pisearch.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VectorSearchTest {
+
+    @Test
+    void test_matchesIndexOf() throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        DigitSource source = DigitSource.of(text);
+        Random random = new Random(314);
+
+        for (int i = 0; i < 500; i++) {
+            int m = 1 + random.nextInt(12);
+            int offset = random.nextInt(text.length() - m);
+            // half of the patterns occur, most of the others do not
+            String pattern = i % 2 == 0 ? text.substring(offset, offset + m) : randomDigits(random, m);
+
+            for (VectorSearch search : new VectorSearch[]{new VectorSearch(pattern), VectorSearch.scalar(pattern)}) {
+                assertEquals(text.indexOf(pattern), search.search(bytes), pattern);
+                assertEquals(text.indexOf(pattern, offset), search.search(source, offset), pattern);
+            }
+        }
+    }
+
+    @Test
+    void test_rangeEndsWithinVector() {
+        // a match in every lane position and just past the end of the range, which must not be reported
+        String text = "0123456789".repeat(20) + "9";
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+
+        for (int to = 0; to <= bytes.length; to++) {
+            for (int from = 0; from <= Math.min(to, 70); from += 7) {
+                String range = text.substring(0, to);
+                for (String pattern : new String[]{"9", "90", "789", "8901234567", "99"}) {
+                    int expected = range.indexOf(pattern, from);
+                    assertEquals(expected, new VectorSearch(pattern).search(bytes, from, to), pattern + " in [" + from + ", " + to + ")");
+                    assertEquals(expected, VectorSearch.scalar(pattern).search(bytes, from, to), pattern + " in [" + from + ", " + to + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_vectorizedOnlyWithModule() {
+        // the test task runs without the module, so this checks the fallback there, and vectorTest adds it
+        assertEquals(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(), VectorSearch.isVectorized());
+    }
+
+    private static String randomDigits(Random random, int length) {
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < length; i++) digits.append((char) ('0' + random.nextInt(10)));
+        return digits.toString();
+    }
+
+}
@@ -0,0 +1,109 @@
+package info.ankin.pisearch.indexing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WindowIndexTest {
+
+    @Test
+    void test_queriesMatchText() throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        DigitSource source = DigitSource.of(text);
+
+        // exact keys up to 18 characters, hashed beyond
+        for (String pattern : Arrays.asList("1", "14", "3.14", "1237", "99999", "000000", "12345678",
+                text.substring(1000, 1018), text.substring(2000, 2019), "1234567890123456789012345")) {
+            WindowIndex index = WindowIndex.build(source, pattern.length());
+
+            assertEquals(text.indexOf(pattern), index.first(pattern), pattern);
+            assertArrayEquals(positions(text, pattern), index.positions(pattern), pattern);
+        }
+    }
+
+    @Test
+    void test_parallelBuildMatchesSequential() throws IOException {
+        DigitSource source = DigitSource.of(Files.readString(Paths.get("../digits/pi-digits.txt")));
+
+        for (int length : new int[]{1, 4, 8, 20}) {
+            WindowIndex sequential = WindowIndex.build(source, length);
+            // called directly, since the text is below the threshold for building in parallel
+            WindowIndex parallel = WindowIndex.buildParallel(source, length,
+                    (int) source.length() - length + 1, sequential.getBucketBits());
+
+            assertArrayEquals(toArray(sequential.getOffsets()), toArray(parallel.getOffsets()));
+            assertArrayEquals(toArray(sequential.getPositions()), toArray(parallel.getPositions()));
+        }
+    }
+
+    @Test
+    void test_extendMatchesBuild() throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        DigitSource source = DigitSource.of(text);
+
+        for (int length : new int[]{1, 4, 8, 20}) {
+            WindowIndex prefix = WindowIndex.build(source.slice(0, text.length() / 2 + 7), length);
+            WindowIndex extended = prefix.extend(source);
+            // the same buckets as the prefix, with the windows of the whole text
+            WindowIndex built = WindowIndex.buildParallel(source, length, text.length() - length + 1, prefix.getBucketBits());
+
+            assertEquals(prefix.getBucketBits(), extended.getBucketBits());
+            assertArrayEquals(toArray(built.getOffsets()), toArray(extended.getOffsets()));
+            assertArrayEquals(toArray(built.getPositions()), toArray(extended.getPositions()));
+        }
+
+        // grown too much for its buckets, so built again
+        WindowIndex extended = WindowIndex.build(source.slice(0, 100), 4).extend(source);
+        assertEquals(WindowIndex.build(source, 4).getBucketBits(), extended.getBucketBits());
+        assertArrayEquals(positions(text, "1237"), extended.positions("1237"));
+    }
+
+    @Test
+    void test_databaseRepositoryMatchesBuiltIndex(@TempDir Path directory) throws IOException {
+        String text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        DigitSource source = DigitSource.of(text);
+        Path file = directory.resolve("pi.idx");
+        HashSearch.DatabaseIndexRepository.write(file, source,
+                Arrays.asList(WindowIndex.build(source, 3), WindowIndex.build(source, 20)));
+
+        try (HashSearch.DatabaseIndexRepository repository = HashSearch.DatabaseIndexRepository.open(file, source)) {
+            assertTrue(repository.isLengthIndexed(3));
+            assertFalse(repository.isLengthIndexed(4));
+
+            HashSearch.Searcher searcher = new HashSearch.Searcher(source, repository);
+            for (String pattern : Arrays.asList("141", "999", "3.1", text.substring(500, 520), "4", "1237")) {
+                assertEquals(text.indexOf(pattern), searcher.search(pattern), pattern);
+            }
+            assertArrayEquals(positions(text, "000"), repository.getIndex(3).positions("000"));
+        }
+    }
+
+    @Test
+    void test_searcherReportsMissingPattern() {
+        HashSearch.Searcher searcher = new HashSearch.Searcher("31415926535");
+
+        assertEquals(2, searcher.search("415"));
+        assertEquals(-1, searcher.search("416"));
+        assertEquals(-1, searcher.search("314159265358"));
+    }
+
+    private static int[] toArray(IntArray array) {
+        return IntStream.range(0, array.length()).map(array::get).toArray();
+    }
+
+    private static int[] positions(String text, String pattern) {
+        return IntStream.iterate(text.indexOf(pattern), i -> i >= 0, i -> text.indexOf(pattern, i + 1)).toArray();
+    }
+
+}
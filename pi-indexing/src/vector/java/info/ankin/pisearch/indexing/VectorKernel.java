@@ -0,0 +1,49 @@
+package info.ankin.pisearch.indexing;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * the comparisons of {@link VectorSearch} with the Vector API, in the widest vectors the CPU has;
+ * only loaded when {@code jdk.incubator.vector} is available
+ * <p>
+ * It compares the first two and the last two characters of the pattern rather than only the first and the last:
+ * with ten digits, one position in a hundred matches two of them, so most vectors would hold a candidate to check
+ * one at a time, but only one in ten thousand matches all four.
+ */
+final class VectorKernel implements VectorSearch.Kernel {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSearch.Kernel TAIL = new VectorSearch.ScalarKernel();
+
+    @Override
+    public int indexOf(byte[] text, int from, int to, byte[] pattern) {
+        int m = pattern.length;
+        int last = to - m;
+        int lanes = SPECIES.length();
+        // the same character twice for patterns of fewer than four
+        int second = Math.min(1, m - 1);
+        int penultimate = Math.max(0, m - 2);
+        ByteVector firstByte = ByteVector.broadcast(SPECIES, pattern[0]);
+        ByteVector secondByte = ByteVector.broadcast(SPECIES, pattern[second]);
+        ByteVector penultimateByte = ByteVector.broadcast(SPECIES, pattern[penultimate]);
+        ByteVector lastByte = ByteVector.broadcast(SPECIES, pattern[m - 1]);
+        int i = from;
+        // every lane is a position where a match could start, so the last vector reads up to text[last + m - 1 + lanes - 1]
+        for (; i + lanes - 1 <= last; i += lanes) {
+            VectorMask<Byte> matches = ByteVector.fromArray(SPECIES, text, i).eq(firstByte)
+                    .and(ByteVector.fromArray(SPECIES, text, i + m - 1).eq(lastByte))
+                    .and(ByteVector.fromArray(SPECIES, text, i + second).eq(secondByte))
+                    .and(ByteVector.fromArray(SPECIES, text, i + penultimate).eq(penultimateByte));
+            // most vectors have no candidate, and testing for one is cheaper than turning the mask into bits
+            if (!matches.anyTrue()) continue;
+            long candidates = matches.toLong();
+            while (candidates != 0) {
+                int candidate = i + Long.numberOfTrailingZeros(candidates);
+                if (VectorSearch.middleMatches(text, candidate, pattern)) return candidate;
+                candidates &= candidates - 1;
+            }
+        }
+        return TAIL.indexOf(text, i, to, pattern);
+    }
+}
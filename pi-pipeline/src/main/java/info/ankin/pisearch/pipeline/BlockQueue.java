@@ -0,0 +1,113 @@
+package info.ankin.pisearch.pipeline;
+
+import info.ankin.pisearch.generation.DigitSink;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A {@link DigitSink} which hands the blocks over to another thread, through a bounded queue.
+ * <p>
+ * A fixed number of buffers go round: the sink copies each block into a free buffer and queues it,
+ * the consumer {@link #take() takes} it and {@link #release(ByteBuffer) releases} it once done with it.
+ * While the consumer is behind, there is no free buffer, so the sink waits, and with it whatever writes to it:
+ * that is the backpressure, and it also bounds the digits in flight to the buffers.
+ * {@link #close() Closing} the sink tells the consumer that there are no more blocks.
+ * <p>
+ * Meant for one producing and one consuming thread.
+ */
+class BlockQueue implements DigitSink {
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final BlockingQueue<ByteBuffer> free;
+    /**
+     * one more slot than there are buffers, so that the end always fits
+     */
+    private final BlockingQueue<ByteBuffer> full;
+    /**
+     * time spent waiting, by the producer for a free buffer and by the consumer for a full one;
+     * each is written by its own thread, so read them once both are done
+     */
+    private long producerWaitNanos;
+    private long consumerWaitNanos;
+    private boolean closed;
+
+    /**
+     * @param buffers   how many blocks can be in flight
+     * @param blockSize size of each buffer; larger blocks are split
+     */
+    BlockQueue(int buffers, int blockSize) {
+        if (buffers < 1) throw new IllegalArgumentException("need at least one buffer: " + buffers);
+        free = new ArrayBlockingQueue<>(buffers);
+        full = new ArrayBlockingQueue<>(buffers + 1);
+        for (int i = 0; i < buffers; i++) free.add(ByteBuffer.allocate(blockSize));
+    }
+
+    @Override
+    public void accept(ByteBuffer block) throws InterruptedIOException {
+        while (block.hasRemaining()) {
+            ByteBuffer buffer;
+            long start = System.nanoTime();
+            try {
+                buffer = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the consumer");
+            }
+            producerWaitNanos += System.nanoTime() - start;
+
+            buffer.clear();
+            ByteBuffer part = block.duplicate();
+            part.limit(part.position() + Math.min(part.remaining(), buffer.remaining()));
+            buffer.put(part).flip();
+            block.position(part.position());
+            full.add(buffer);
+        }
+    }
+
+    /**
+     * @return the next block, or null once the sink is closed and every block has been taken
+     */
+    ByteBuffer take() throws InterruptedIOException {
+        long start = System.nanoTime();
+        ByteBuffer block;
+        try {
+            block = full.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the producer");
+        }
+        consumerWaitNanos += System.nanoTime() - start;
+        if (block != END) return block;
+        // for any further calls
+        full.add(END);
+        return null;
+    }
+
+    /**
+     * give back a block which was {@link #take() taken}, to be filled again
+     */
+    void release(ByteBuffer block) {
+        free.add(block);
+    }
+
+    /**
+     * no more blocks; this never waits, so it can be called from a producer which was interrupted
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        full.add(END);
+    }
+
+    long getProducerWaitNanos() {
+        return producerWaitNanos;
+    }
+
+    long getConsumerWaitNanos() {
+        return consumerWaitNanos;
+    }
+}
@@ -0,0 +1,204 @@
+package info.ankin.pisearch.pipeline;
+
+import info.ankin.pisearch.generation.BinarySplittingPiGenerator;
+import info.ankin.pisearch.generation.DecimalConverter;
+import info.ankin.pisearch.generation.FileDigitSink;
+import info.ankin.pisearch.indexing.DigitSource;
+import info.ankin.pisearch.indexing.HashSearch;
+import info.ankin.pisearch.indexing.IncrementalIndex;
+import info.ankin.pisearch.indexing.WindowIndex;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates digits of pi and indexes them in one go, without reading them back from a file.
+ * <p>
+ * A conversion thread computes pi with {@link BinarySplittingPiGenerator} and streams its digits in blocks
+ * through a {@link BlockQueue} to the calling thread, which copies each block onto the end of the text in memory
+ * and {@link IncrementalIndex#append(DigitSource) appends} it to the window indexes, so that converting and indexing
+ * overlap. The queue has only a few buffers, so whichever of the two is ahead waits for the other.
+ * The digits can be written to a text file as well, e.g. to open the index with later, but nothing reads that file.
+ */
+public class Pipeline {
+    public static final int DEFAULT_QUEUE_BLOCKS = 4;
+
+    private final int[] lengths;
+    private boolean parallel = true;
+    private int blockSize = DecimalConverter.DEFAULT_BLOCK_SIZE;
+    private int queueBlocks = DEFAULT_QUEUE_BLOCKS;
+    private Path textFile;
+    private long conversionWaitNanos;
+    private long indexingWaitNanos;
+
+    /**
+     * @param lengths the window lengths to index
+     */
+    public Pipeline(int... lengths) {
+        if (lengths.length == 0) throw new IllegalArgumentException("no window lengths to index");
+        this.lengths = lengths.clone();
+    }
+
+    /**
+     * {@code [digits] [index-file] [lengths] [text-file]}, where lengths are comma separated,
+     * writing a window index file for {@link HashSearch.DatabaseIndexRepository} and the digits it was built from
+     */
+    public static void main(String[] args) throws IOException {
+        int digits = args.length > 0 ? Integer.parseInt(args[0], 10) : 1_000_000;
+        Path index = Paths.get(args.length > 1 ? args[1] : "digits/pi-digits.idx");
+        String lengths = args.length > 2 ? args[2] : "4,5,6,7,8";
+        Path text = Paths.get(args.length > 3 ? args[3] : "digits/pi-digits.txt");
+
+        Pipeline pipeline = new Pipeline(Arrays.stream(lengths.split(",")).mapToInt(length -> Integer.parseInt(length.trim(), 10)).toArray())
+                .setTextFile(text);
+        long start = System.nanoTime();
+        try (IncrementalIndex incremental = pipeline.run(digits)) {
+            List<WindowIndex> indexes = incremental.compact();
+            HashSearch.DatabaseIndexRepository.write(index, incremental.getSource(), indexes);
+            System.err.printf("%d digits of pi written to %s and indexed for lengths %s in %s in %.1fs;"
+                            + " conversion waited %.1fs for indexing, indexing waited %.1fs for conversion%n",
+                    digits, text, lengths, index, (System.nanoTime() - start) / 1e9,
+                    pipeline.getConversionWaitNanos() / 1e9, pipeline.getIndexingWaitNanos() / 1e9);
+        }
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param parallel whether to compute pi on all cores, see {@link BinarySplittingPiGenerator#setParallel(boolean)}
+     */
+    public Pipeline setParallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @param blockSize digits per block, which is also how many the index is extended by at a time
+     */
+    public Pipeline setBlockSize(int blockSize) {
+        if (blockSize < 1) throw new IllegalArgumentException("block size must be positive: " + blockSize);
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    public int getQueueBlocks() {
+        return queueBlocks;
+    }
+
+    /**
+     * @param queueBlocks how many blocks the conversion can be ahead of the indexing
+     */
+    public Pipeline setQueueBlocks(int queueBlocks) {
+        if (queueBlocks < 1) throw new IllegalArgumentException("queue needs at least one block: " + queueBlocks);
+        this.queueBlocks = queueBlocks;
+        return this;
+    }
+
+    public Path getTextFile() {
+        return textFile;
+    }
+
+    /**
+     * @param textFile where to write the digits as well, or null not to
+     */
+    public Pipeline setTextFile(Path textFile) {
+        this.textFile = textFile;
+        return this;
+    }
+
+    /**
+     * @return how long the last run's conversion waited for a free block, i.e. for the indexing to catch up
+     */
+    public long getConversionWaitNanos() {
+        return conversionWaitNanos;
+    }
+
+    /**
+     * @return how long the last run's indexing waited for a block, including while pi was being computed
+     */
+    public long getIndexingWaitNanos() {
+        return indexingWaitNanos;
+    }
+
+    /**
+     * @param digits number of digits after the decimal point
+     * @return the index of the text {@code "3.14..."}, which is its {@link IncrementalIndex#getSource() source};
+     * to be closed, which stops its background merges
+     */
+    public IncrementalIndex run(int digits) throws IOException {
+        // "3." and the digits, as written by DecimalConverter.writePi
+        int length = digits == 0 ? 1 : Math.addExact(digits, 2);
+        byte[] text = new byte[length];
+        List<WindowIndex> empty = new ArrayList<>();
+        for (int windowLength : lengths) empty.add(WindowIndex.build(DigitSource.of(text, 0), windowLength));
+        IncrementalIndex index = new IncrementalIndex(DigitSource.of(text, 0), empty);
+
+        BlockQueue queue = new BlockQueue(queueBlocks, blockSize);
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-conversion");
+            // after a failure, it may still be computing pi for a while, which must not keep the JVM running
+            thread.setDaemon(true);
+            return thread;
+        });
+        Future<?> conversion = executor.submit(() -> {
+            try (BlockQueue sink = queue) {
+                BigInteger scaledPi = new BinarySplittingPiGenerator().setParallel(parallel).scaledPi(digits);
+                // the generator does not notice being cancelled, and the sink only once the first block is written
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("cancelled before the conversion");
+                new DecimalConverter(sink, blockSize).writePi(scaledPi, digits);
+            }
+            return null;
+        });
+
+        try (FileDigitSink file = textFile == null ? null : FileDigitSink.create(textFile)) {
+            int filled = 0;
+            for (ByteBuffer block; (block = queue.take()) != null; ) {
+                int size = block.remaining();
+                if (size > length - filled) throw new IOException("conversion wrote more than " + length + " characters");
+                block.get(text, filled, size);
+                queue.release(block);
+                if (file != null) file.accept(ByteBuffer.wrap(text, filled, size));
+                filled += size;
+                index.append(DigitSource.of(text, filled));
+            }
+            conversion.get();
+            if (filled != length) throw new IOException("conversion wrote " + filled + " characters, expected " + length);
+        } catch (ExecutionException e) {
+            index.close();
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException("conversion failed", e.getCause());
+        } catch (InterruptedException e) {
+            index.close();
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the conversion", e);
+        } catch (IOException | RuntimeException e) {
+            index.close();
+            throw e;
+        } finally {
+            // after a failure, the conversion may be waiting for a block which will never be released
+            conversion.cancel(true);
+            executor.shutdown();
+        }
+        conversionWaitNanos = queue.getProducerWaitNanos();
+        indexingWaitNanos = queue.getConsumerWaitNanos();
+        return index;
+    }
+}
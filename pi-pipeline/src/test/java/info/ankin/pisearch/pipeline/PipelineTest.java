@@ -0,0 +1,51 @@
+package info.ankin.pisearch.pipeline;
+
+import info.ankin.pisearch.indexing.IncrementalIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineTest {
+
+    @Test
+    void test_indexesGeneratedDigits(@TempDir Path directory) throws IOException {
+        String expected = Files.readString(Paths.get("../digits/pi-digits.txt")).substring(0, 5002);
+        Path textFile = directory.resolve("pi.txt");
+        // small blocks and a short queue, so that the conversion has to wait for the indexing
+        Pipeline pipeline = new Pipeline(1, 4, 6).setBlockSize(100).setQueueBlocks(2).setTextFile(textFile);
+
+        try (IncrementalIndex index = pipeline.run(5000)) {
+            assertEquals(expected, index.getSource().substring(0, index.getSource().length()));
+            assertEquals(expected, Files.readString(textFile));
+            for (String pattern : Arrays.asList("3", "1237", "999999", expected.substring(4990, 4996), expected.substring(97, 103))) {
+                assertEquals(expected.indexOf(pattern), index.first(pattern), pattern);
+            }
+            assertEquals(expected.chars().filter(c -> c == '7').count(), index.count("7"));
+        }
+    }
+
+    @Test
+    void test_failedIndexingStopsConversion(@TempDir Path directory) throws InterruptedException {
+        Pipeline pipeline = new Pipeline(4).setBlockSize(10).setQueueBlocks(1)
+                .setTextFile(directory.resolve("missing").resolve("pi.txt"));
+
+        assertThrows(IOException.class, () -> pipeline.run(100_000));
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!thread.getName().equals("pipeline-conversion")) continue;
+            assertTrue(thread.isDaemon());
+            thread.join(10_000);
+            assertFalse(thread.isAlive(), "conversion still running");
+        }
+    }
+
+}
@@ -0,0 +1,288 @@
+package info.ankin.pisearch.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import info.ankin.pisearch.indexing.DigitSource;
+import info.ankin.pisearch.indexing.FirstOccurrenceTable;
+import info.ankin.pisearch.indexing.HashSearch;
+import info.ankin.pisearch.indexing.SearchCache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Search service over HTTP, which loads the digits and their index once and answers queries as JSON:
+ * <pre>
+ *  GET /search?q=1237                  {"query":"1237","position":1925,"count":4,"context":"9194945047 1237 1378696095"}
+ *  GET /count?q=1237                   {"query":"1237","count":4}
+ *  GET /context?position=1925&amp;length=4  {"position":1925,"length":4,"context":"9194945047 1237 1378696095"}
+ *  GET /stats                          {"hits":..,"misses":..,"evictions":..,"entries":..,"bytes":..}
+ * </pre>
+ * A missing pattern has position -1 and a null context. Searches and counts go through a {@link SearchCache}.
+ * <p>
+ * Only patterns whose length is already indexed are counted, since building an index takes a pass over the whole text
+ * and memory for good; the searcher's {@link FirstOccurrenceTable} answers searches, without a count, for the
+ * lengths it covers. Queries of any other length are bad requests.
+ * <p>
+ * Requests run on virtual threads where the JDK has them (21 and later), found by reflection so that the module
+ * still builds for 17, and otherwise on a fixed pool of platform threads.
+ * <p>
+ * {@link #main(String[])} turns off Nagle's algorithm for the JDK's HTTP server, with the system property
+ * {@code sun.net.httpserver.nodelay}, unless it is set; a server started otherwise should set it too, before it starts.
+ */
+public class PiServer {
+    /**
+     * longest pattern accepted, and longest match whose context is shown
+     */
+    public static final int MAX_QUERY_LENGTH = 32;
+    public static final int DEFAULT_RADIUS = 10;
+    /**
+     * window lengths indexed when the server is started without an index file
+     */
+    public static final int[] DEFAULT_LENGTHS = {4, 5, 6, 7, 8};
+    private static final int MAX_RADIUS = 1000;
+
+    private final HashSearch.Searcher searcher;
+    private final SearchCache cache;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public PiServer(HashSearch.Searcher searcher) {
+        this.searcher = searcher;
+        this.cache = new SearchCache(searcher, SearchCache.DEFAULT_MAX_BYTES, DEFAULT_RADIUS);
+    }
+
+    /**
+     * {@code [digits-file] [port] [index-file] [first-table]}, where the index file is opened if it exists,
+     * see {@code CreateIndex hash-index}, and otherwise the {@link #DEFAULT_LENGTHS} are indexed in memory before
+     * the server starts; so is the table, see {@code CreateIndex first-table}
+     */
+    public static void main(String[] args) throws IOException {
+        Path digits = Paths.get(args.length > 0 ? args[0] : "digits/pi-digits.txt");
+        int port = args.length > 1 ? Integer.parseInt(args[1], 10) : 8080;
+        Path index = Paths.get(args.length > 2 ? args[2] : "digits/pi-digits.idx");
+        Path table = Paths.get(args.length > 3 ? args[3] : "digits/pi-digits.first");
+
+        // headers and body go out in separate writes, which Nagle's algorithm and delayed ACKs would hold up
+        // for tens of milliseconds per keep-alive request; read once, when the first server is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        DigitSource source = DigitSource.open(digits);
+        HashSearch.Searcher searcher;
+        if (Files.exists(index)) {
+            searcher = new HashSearch.Searcher(source, HashSearch.DatabaseIndexRepository.open(index, source));
+        } else {
+            searcher = new HashSearch.Searcher(source);
+            for (int length : DEFAULT_LENGTHS) searcher.initHashesForLength(length);
+        }
+        if (Files.exists(table)) searcher.setFirstOccurrenceTable(FirstOccurrenceTable.open(table));
+        PiServer server = new PiServer(searcher);
+        server.start(new InetSocketAddress(port));
+        System.err.println("serving " + source.length() + " characters of " + digits + " on port " + server.getPort()
+                + " for patterns of " + server.indexedLengths() + " digits"
+                + (Files.exists(index) ? ", with index " + index : "") + (Files.exists(table) ? ", with table " + table : ""));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    }
+
+    /**
+     * @param address where to listen, e.g. port 0 for any free one
+     */
+    public PiServer start(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/search", handler(this::search));
+        server.createContext("/count", handler(this::count));
+        server.createContext("/context", handler(this::context));
+        server.createContext("/stats", handler(this::stats));
+        server.start();
+        return this;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public SearchCache getCache() {
+        return cache;
+    }
+
+    private String search(Map<String, String> parameters) {
+        String query = query(parameters);
+        if (!searcher.isLengthIndexed(query.length())) {
+            // only in the table, which has no counts, and is as fast as the cache
+            long position = searcher.getFirstOccurrenceTable().first(query);
+            String context = position < 0 ? null : searcher.context(position, query.length(), DEFAULT_RADIUS);
+            return "{\"query\":" + quote(query) + ",\"position\":" + position + ",\"count\":null,\"context\":" + quote(context) + "}";
+        }
+        SearchCache.Result result = cache.get(query);
+        return "{\"query\":" + quote(query) + ",\"position\":" + result.getFirst() + ",\"count\":" + result.getCount()
+                + ",\"context\":" + quote(result.getContext()) + "}";
+    }
+
+    private String count(Map<String, String> parameters) {
+        String query = query(parameters);
+        if (!searcher.isLengthIndexed(query.length()))
+            throw new BadRequestException("patterns of " + query.length() + " digits cannot be counted, only of " + indexedLengths());
+        return "{\"query\":" + quote(query) + ",\"count\":" + cache.get(query).getCount() + "}";
+    }
+
+    private String context(Map<String, String> parameters) {
+        long position = number(parameters, "position", -1, searcher.getSource().length() - 1);
+        int length = (int) number(parameters, "length", 1, MAX_QUERY_LENGTH);
+        int radius = (int) number(parameters, "radius", DEFAULT_RADIUS, MAX_RADIUS);
+        if (position < 0) throw new BadRequestException("position is required");
+        return "{\"position\":" + position + ",\"length\":" + length
+                + ",\"context\":" + quote(searcher.context(position, length, radius)) + "}";
+    }
+
+    private String stats(Map<String, String> parameters) {
+        SearchCache.Stats stats = cache.getStats();
+        return "{\"hits\":" + stats.getHits() + ",\"misses\":" + stats.getMisses() + ",\"evictions\":" + stats.getEvictions()
+                + ",\"entries\":" + stats.getEntries() + ",\"bytes\":" + stats.getBytes() + "}";
+    }
+
+    /**
+     * @return the pattern, if it is digits of a length which can be searched without building an index
+     */
+    private String query(Map<String, String> parameters) {
+        String query = parameters.get("q");
+        if (query == null || query.isEmpty() || query.length() > MAX_QUERY_LENGTH || !query.chars().allMatch(c -> c >= '0' && c <= '9'))
+            throw new BadRequestException("q must be 1 to " + MAX_QUERY_LENGTH + " digits");
+        FirstOccurrenceTable firstOccurrences = searcher.getFirstOccurrenceTable();
+        if (!searcher.isLengthIndexed(query.length()) && (firstOccurrences == null || !firstOccurrences.covers(query)))
+            throw new BadRequestException("patterns of " + query.length() + " digits are not indexed, only of " + indexedLengths());
+        return query;
+    }
+
+    /**
+     * @return the lengths which can be searched and counted, e.g. {@code "4, 5, 6, 7, 8"}
+     */
+    String indexedLengths() {
+        return IntStream.rangeClosed(1, MAX_QUERY_LENGTH)
+                .filter(searcher::isLengthIndexed)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * @return the parameter's value, between zero and {@code max}, or {@code defaultValue} if it is missing
+     */
+    private static long number(Map<String, String> parameters, String name, long defaultValue, long max) {
+        String value = parameters.get(name);
+        if (value == null) return defaultValue;
+        try {
+            long number = Long.parseLong(value, 10);
+            if (number >= 0 && number <= max) return number;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new BadRequestException(name + " must be a number from 0 to " + max);
+    }
+
+    private interface Endpoint {
+        String respond(Map<String, String> parameters);
+    }
+
+    private static HttpHandler handler(Endpoint endpoint) {
+        return exchange -> {
+            try (exchange) {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 405, "{\"error\":\"only GET is supported\"}");
+                    return;
+                }
+                String body;
+                try {
+                    body = endpoint.respond(parameters(exchange.getRequestURI().getRawQuery()));
+                } catch (BadRequestException e) {
+                    respond(exchange, 400, "{\"error\":" + quote(e.getMessage()) + "}");
+                    return;
+                } catch (RuntimeException e) {
+                    respond(exchange, 500, "{\"error\":" + quote(String.valueOf(e)) + "}");
+                    return;
+                }
+                respond(exchange, 200, body);
+            }
+        };
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) return parameters;
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            parameters.putIfAbsent(name, value);
+        }
+        return parameters;
+    }
+
+    /**
+     * @return {@code value} as a JSON string, or {@code null}
+     */
+    static String quote(String value) {
+        if (value == null) return "null";
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') json.append('\\').append(c);
+            else if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+            else json.append(c);
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * a thread per request: virtual if available, otherwise a bounded pool of platform threads
+     */
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            // before 21, or a preview which is not enabled
+            return Executors.newFixedThreadPool(4 * Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    private static final class BadRequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private BadRequestException(String message) {
+            super(message);
+        }
+    }
+}
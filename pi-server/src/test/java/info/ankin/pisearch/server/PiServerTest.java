@@ -0,0 +1,90 @@
+package info.ankin.pisearch.server;
+
+import info.ankin.pisearch.indexing.FirstOccurrenceTable;
+import info.ankin.pisearch.indexing.HashSearch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class PiServerTest {
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String text;
+    private HashSearch.Searcher searcher;
+    private PiServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        text = Files.readString(Paths.get("../digits/pi-digits.txt"));
+        searcher = new HashSearch.Searcher(text).initHashesForLength(4).initHashesForLength(20);
+        server = new PiServer(searcher).start(new InetSocketAddress("localhost", 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void test_search() throws Exception {
+        int position = text.indexOf("1237");
+        String context = text.substring(position - 10, position) + " 1237 " + text.substring(position + 4, position + 14);
+
+        HttpResponse<String> response = get("/search?q=1237");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+        assertEquals("{\"query\":\"1237\",\"position\":" + position + ",\"count\":4,\"context\":\"" + context + "\"}", response.body());
+        assertEquals("{\"query\":\"12345678901234567890\",\"position\":-1,\"count\":0,\"context\":null}",
+                get("/search?q=12345678901234567890").body());
+    }
+
+    @Test
+    void test_countAndContext() throws Exception {
+        assertEquals("{\"query\":\"1237\",\"count\":4}", get("/count?q=1237").body());
+        assertEquals("{\"position\":2,\"length\":4,\"context\":\"3. 1415 92\"}", get("/context?position=2&length=4&radius=2").body());
+    }
+
+    @Test
+    void test_badRequests() throws Exception {
+        assertEquals(400, get("/search?q=3.14").statusCode());
+        assertEquals(400, get("/search").statusCode());
+        assertEquals(400, get("/context?position=-5").statusCode());
+        assertEquals(404, get("/other").statusCode());
+    }
+
+    @Test
+    void test_onlyIndexedLengths() throws Exception {
+        assertEquals(400, get("/search?q=999999").statusCode());
+        assertEquals(400, get("/count?q=999999").statusCode());
+        assertFalse(searcher.isLengthIndexed(6));
+
+        // the table answers searches for the lengths it covers, but cannot count
+        searcher.setFirstOccurrenceTable(FirstOccurrenceTable.build(searcher.getSource(), 6));
+        int position = text.indexOf("999999");
+        assertEquals("{\"query\":\"999999\",\"position\":" + position + ",\"count\":null,\"context\":\""
+                        + text.substring(position - 10, position) + " 999999 " + text.substring(position + 6, position + 16) + "\"}",
+                get("/search?q=999999").body());
+        assertEquals(400, get("/count?q=999999").statusCode());
+        assertEquals(400, get("/search?q=1234567").statusCode());
+        assertFalse(searcher.isLengthIndexed(6));
+        assertEquals("4, 20", server.indexedLengths());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        URI uri = URI.create("http://localhost:" + server.getPort() + path);
+        return client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+}